@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling.benchmark;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The source images shared by the benchmarks: every combination of image type, source size and scale ratio is
+ * measured. Use the JMH option -p to measure a part of the matrix, e.g. -p imageType=3BYTE_BGR -p scale=0.5
+ *
+ * @author Morten Nobel-Joergensen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public abstract class ImageBenchmark {
+
+	@Param({"BYTE_GRAY", "3BYTE_BGR", "4BYTE_ABGR", "INT_RGB", "INT_ARGB"})
+	public String imageType;
+
+	@Param({"640x480", "4000x3000"})
+	public String sourceSize;
+
+	@Param({"0.1", "0.5", "1.5"})
+	public float scale;
+
+	protected BufferedImage source;
+	protected int dstWidth;
+	protected int dstHeight;
+
+	@Setup
+	public void createSource() {
+		final String[] size = sourceSize.split("x");
+		final int width = Integer.parseInt(size[0]);
+		final int height = Integer.parseInt(size[1]);
+		source = createImage(width, height, parseType(imageType));
+		dstWidth = Math.max(3, Math.round(width * scale));
+		dstHeight = Math.max(3, Math.round(height * scale));
+	}
+
+	static int parseType(String imageType) {
+		switch (imageType) {
+		case "BYTE_GRAY": return BufferedImage.TYPE_BYTE_GRAY;
+		case "3BYTE_BGR": return BufferedImage.TYPE_3BYTE_BGR;
+		case "4BYTE_ABGR": return BufferedImage.TYPE_4BYTE_ABGR;
+		case "INT_RGB": return BufferedImage.TYPE_INT_RGB;
+		case "INT_ARGB": return BufferedImage.TYPE_INT_ARGB;
+		case "INT_BGR": return BufferedImage.TYPE_INT_BGR;
+		}
+		throw new IllegalArgumentException("Unknown image type " + imageType);
+	}
+
+	/**
+	 * @return an image with smooth gradients, hard edges and noise, so that neither flat areas nor pure noise dominate
+	 */
+	static BufferedImage createImage(int width, int height, int type) {
+		final BufferedImage image = new BufferedImage(width, height, type);
+		final Random random = new Random(42);
+		final int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				final int red = x * 255 / width;
+				final int green = y * 255 / height;
+				final int blue = ((x / 64 + y / 64) & 1) == 0 ? 40 : 215;
+				final int alpha = 128 + (x + y) % 128;
+				final int noise = random.nextInt(32) - 16;
+				row[x] = alpha << 24 | clamp(red + noise) << 16 | clamp(green + noise) << 8 | clamp(blue + noise);
+			}
+			image.setRGB(0, y, width, 1, row, 0, width);
+		}
+		return image;
+	}
+
+	private static int clamp(int value) {
+		return Math.max(0, Math.min(255, value));
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling.benchmark;
+
+import com.mortennobel.imagescaling.MultiStepRescaleOp;
+import com.mortennobel.imagescaling.experimental.ImprovedMultistepRescaleOp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * Measures {@link MultiStepRescaleOp} and the experimental {@link ImprovedMultistepRescaleOp} per interpolation.
+ *
+ * @author Morten Nobel-Joergensen
+ */
+public class MultiStepRescaleOpBenchmark extends ImageBenchmark {
+
+	@Param({"NEAREST_NEIGHBOR", "BILINEAR", "BICUBIC"})
+	public String interpolation;
+
+	private MultiStepRescaleOp multiStepRescaleOp;
+	private ImprovedMultistepRescaleOp improvedMultistepRescaleOp;
+
+	@Setup
+	public void createOps() {
+		final Object hint;
+		switch (interpolation) {
+		case "NEAREST_NEIGHBOR": hint = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR; break;
+		case "BILINEAR": hint = RenderingHints.VALUE_INTERPOLATION_BILINEAR; break;
+		case "BICUBIC": hint = RenderingHints.VALUE_INTERPOLATION_BICUBIC; break;
+		default: throw new IllegalArgumentException("Unknown interpolation " + interpolation);
+		}
+		multiStepRescaleOp = new MultiStepRescaleOp(dstWidth, dstHeight, hint);
+		improvedMultistepRescaleOp = new ImprovedMultistepRescaleOp(dstWidth, dstHeight, hint);
+	}
+
+	@Benchmark
+	public BufferedImage multiStepRescaleOp() {
+		return multiStepRescaleOp.filter(source, null);
+	}
+
+	@Benchmark
+	public BufferedImage improvedMultistepRescaleOp() {
+		return improvedMultistepRescaleOp.filter(source, null);
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling.benchmark;
+
+import com.mortennobel.imagescaling.ResampleFilter;
+import com.mortennobel.imagescaling.ResampleFilters;
+import com.mortennobel.imagescaling.ResampleOp;
+import com.mortennobel.imagescaling.StreamingResampleOp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures {@link ResampleOp} and {@link StreamingResampleOp} per filter and number of threads. The fixed point and
+ * partitioning options are measured with their defaults only, compare them using e.g. -p fixedPoint=false,true
+ *
+ * @author Morten Nobel-Joergensen
+ */
+public class ResampleOpBenchmark extends ImageBenchmark {
+
+	@Param({"Lanczos3", "Mitchell", "BiCubic", "BiCubicHighFreqResponse", "BSpline", "Bell", "Hermite", "Triangle", "Box"})
+	public String filter;
+
+	@Param({"1", "4"})
+	public int threads;
+
+	@Param({"false"})
+	public boolean fixedPoint;
+
+	@Param({"Contiguous"})
+	public ResampleOp.Partitioning partitioning;
+
+	private ExecutorService executor;
+	private ResampleOp resampleOp;
+	private ResampleOp streamingResampleOp;
+
+	@Setup
+	public void createOps() {
+		executor = Executors.newFixedThreadPool(threads);
+		resampleOp = configure(new ResampleOp(dstWidth, dstHeight, executor));
+		streamingResampleOp = configure(new StreamingResampleOp(dstWidth, dstHeight, executor));
+	}
+
+	@TearDown
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	private ResampleOp configure(ResampleOp op) {
+		op.setFilter(parseFilter(filter));
+		op.setNumberOfThreads(threads);
+		op.setFixedPointArithmetic(fixedPoint);
+		op.setPartitioning(partitioning);
+		return op;
+	}
+
+	static ResampleFilter parseFilter(String filter) {
+		switch (filter) {
+		case "Lanczos3": return ResampleFilters.getLanczos3Filter();
+		case "Mitchell": return ResampleFilters.getMitchellFilter();
+		case "BiCubic": return ResampleFilters.getBiCubicFilter();
+		case "BiCubicHighFreqResponse": return ResampleFilters.getBiCubicHighFreqResponse();
+		case "BSpline": return ResampleFilters.getBSplineFilter();
+		case "Bell": return ResampleFilters.getBellFilter();
+		case "Hermite": return ResampleFilters.getHermiteFilter();
+		case "Triangle": return ResampleFilters.getTriangleFilter();
+		case "Box": return ResampleFilters.getBoxFilter();
+		}
+		throw new IllegalArgumentException("Unknown filter " + filter);
+	}
+
+	@Benchmark
+	public BufferedImage resampleOp() {
+		return resampleOp.filter(source, null);
+	}
+
+	@Benchmark
+	public BufferedImage streamingResampleOp() {
+		return streamingResampleOp.filter(source, null);
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling.benchmark;
+
+import com.mortennobel.imagescaling.experimental.ResampleOpSingleThread;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Measures the experimental {@link ResampleOpSingleThread} per filter, to compare with {@link ResampleOpBenchmark}
+ * using one thread.
+ *
+ * @author Morten Nobel-Joergensen
+ */
+@SuppressWarnings("deprecation")
+public class ResampleOpSingleThreadBenchmark extends ImageBenchmark {
+
+	@Param({"Lanczos3", "Mitchell", "BiCubic", "BiCubicHighFreqResponse", "BSpline", "Bell", "Hermite", "Triangle", "Box"})
+	public String filter;
+
+	private ResampleOpSingleThread resampleOpSingleThread;
+
+	@Setup
+	public void createOp() {
+		resampleOpSingleThread = new ResampleOpSingleThread(dstWidth, dstHeight);
+		resampleOpSingleThread.setFilter(ResampleOpBenchmark.parseFilter(filter));
+	}
+
+	@Benchmark
+	public BufferedImage resampleOpSingleThread() {
+		return resampleOpSingleThread.filter(source, null);
+	}
+}
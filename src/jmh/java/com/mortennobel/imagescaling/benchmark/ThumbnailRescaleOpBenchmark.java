@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling.benchmark;
+
+import com.mortennobel.imagescaling.ThumbnailRescaleOp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Measures {@link ThumbnailRescaleOp} per sampling pattern.
+ *
+ * @author Morten Nobel-Joergensen
+ */
+public class ThumbnailRescaleOpBenchmark extends ImageBenchmark {
+
+	@Param({"S_1SAMPLE", "S_2X2_RGSS", "S_8ROCKS"})
+	public ThumbnailRescaleOp.Sampling sampling;
+
+	private ThumbnailRescaleOp thumbnailRescaleOp;
+
+	@Setup
+	public void createOp() {
+		thumbnailRescaleOp = new ThumbnailRescaleOp(dstWidth, dstHeight);
+		thumbnailRescaleOp.setSampling(sampling);
+	}
+
+	@Benchmark
+	public BufferedImage thumbnailRescaleOp() {
+		return thumbnailRescaleOp.filter(source, null);
+	}
+}
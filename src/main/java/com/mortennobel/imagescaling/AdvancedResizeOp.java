@@ -12,13 +12,18 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
 import java.awt.image.ColorModel;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 import com.jhlabs.image.UnsharpFilter;
-import com.mortennobel.imagescaling.threads.ResampleThreadFactory;
+import com.mortennobel.imagescaling.threads.SharedResampleExecutor;
 
 /**
  * @author Morten Nobel-Joergensen
@@ -36,16 +41,25 @@ public abstract class AdvancedResizeOp implements BufferedImageOp {
 			this.factor = factor;
 		}
 	}
-	private List<ProgressListener> listeners = new ArrayList<ProgressListener>();
+	// copy on write, since the listeners are notified by the threads using the op while other threads may add some
+	private final List<ProgressListener> listeners = new CopyOnWriteArrayList<ProgressListener>();
+	private final List<MetricsListener> metricsListeners = new CopyOnWriteArrayList<MetricsListener>();
 
     private final DimensionConstrain dimensionConstrain;
     private final ExecutorService executorService;
 	private UnsharpenMask unsharpenMask = UnsharpenMask.None;
 
+	/**
+	 * Creates an op that uses the process wide {@link SharedResampleExecutor}.
+	 */
 	public AdvancedResizeOp(DimensionConstrain dimensionConstrain) {
-		this(dimensionConstrain, Executors.newCachedThreadPool(new ResampleThreadFactory()));
+		this(dimensionConstrain, null);
 	}
 
+	/**
+	 * @param executorService the executor used to run the work of the op, or null to use the
+	 *                           {@link SharedResampleExecutor}. The op never shuts the executor down.
+	 */
 	public AdvancedResizeOp(final DimensionConstrain dimensionConstrain,
 							final ExecutorService executorService) {
 		this.dimensionConstrain = dimensionConstrain;
@@ -53,7 +67,7 @@ public abstract class AdvancedResizeOp implements BufferedImageOp {
 	}
 
 	public ExecutorService getExecutorService() {
-		return executorService;
+		return executorService != null ? executorService : SharedResampleExecutor.get();
 	}
 
 	public UnsharpenMask getUnsharpenMask() {
@@ -70,6 +84,13 @@ public abstract class AdvancedResizeOp implements BufferedImageOp {
         }
     }
 
+	/**
+	 * @return true if progress is reported to any listener, ops skip counting their progress otherwise
+	 */
+	final boolean hasProgressListeners() {
+		return !listeners.isEmpty();
+	}
+
     public final void addProgressListener(ProgressListener progressListener) {
         listeners.add(progressListener);
     }
@@ -78,23 +99,198 @@ public abstract class AdvancedResizeOp implements BufferedImageOp {
         return listeners.remove(progressListener);
     }
 
+	/**
+	 * Adds a listener receiving the timings of each resize. The resizes are only measured while the op has a metrics
+	 * listener.
+	 */
+	public final void addMetricsListener(MetricsListener metricsListener) {
+		metricsListeners.add(metricsListener);
+	}
+
+	public final boolean removeMetricsListener(MetricsListener metricsListener) {
+		return metricsListeners.remove(metricsListener);
+	}
+
     public final BufferedImage filter(BufferedImage src, BufferedImage dest){
 		Dimension dstDimension = dimensionConstrain.getDimension(new  Dimension(src.getWidth(),src.getHeight()));
-		int dstWidth = dstDimension.width;
-		int dstHeight = dstDimension.height;
-		BufferedImage bufferedImage = doFilter(src, dest, dstWidth, dstHeight);
+		return filter(src, dest, dstDimension);
+	}
+
+	/**
+	 * Decodes the first image of the reader and resizes it. The destination size is computed from the size of the
+	 * encoded image, which is decoded with the source subsampling of {@link ImageUtils#readSubsampled}. When the
+	 * destination is much smaller than the image, e.g. for thumbnails, this is several times faster and uses a
+	 * fraction of the memory of decoding the whole image first.
+	 *
+	 * @param reader a reader which input has been set, the reader is not disposed
+	 * @throws IOException if the image could not be decoded
+	 */
+	public BufferedImage filter(ImageReader reader) throws IOException {
+		Dimension dstDimension = getDestinationDimension(reader.getWidth(0), reader.getHeight(0));
+		BufferedImage src = ImageUtils.readSubsampled(reader, dstDimension.width, dstDimension.height);
+		return filter(src, null, dstDimension);
+	}
+
+	/**
+	 * Decodes the first image of the stream with the first {@link ImageReader} that supports it, and resizes it.
+	 *
+	 * @param input the encoded image, the stream is not closed
+	 * @throws IOException if no reader supports the image or it could not be decoded
+	 * @see #filter(ImageReader)
+	 */
+	public final BufferedImage filter(ImageInputStream input) throws IOException {
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if (!readers.hasNext()){
+			throw new IOException("No ImageReader found for the image");
+		}
+		ImageReader reader = readers.next();
+		try {
+			reader.setInput(input, true, true);
+			return filter(reader);
+		} finally {
+			reader.dispose();
+		}
+	}
+
+	private BufferedImage filter(final BufferedImage src, final BufferedImage dest, final Dimension dstDimension){
+		return instrumented(src.getWidth(), src.getHeight(), ImageUtils.imageTypeName(src), ImageUtils.nrChannels(src),
+				dstDimension.width, dstDimension.height, metrics -> sharpenAfterDoFilter(
+						doFilter(src, dest, dstDimension.width, dstDimension.height), metrics));
+	}
+
+	/**
+	 * A resize run by {@link #instrumented}.
+	 */
+	interface Resize<T, E extends Exception> {
+		/**
+		 * @param metrics the metrics of the resize, or null if it is not measured
+		 */
+		T run(ResizeMetrics metrics) throws E;
+	}
+
+	/**
+	 * Runs a resize within its flight recorder event, and passes its metrics to the metrics listeners if the op has
+	 * any. Each entry point of the ops resizes through this method.
+	 *
+	 * @param imageType the name of the type of the source, see {@link ImageUtils#imageTypeName}
+	 */
+	final <T, E extends Exception> T instrumented(int srcWidth, int srcHeight, String imageType, int nrChannels,
+												  int dstWidth, int dstHeight, Resize<T, E> resize) throws E {
+		final Object event = ResizeEvents.beginResize(this, srcWidth, srcHeight, imageType, dstWidth, dstHeight);
+		try {
+			if (metricsListeners.isEmpty()){
+				return resize.run(null);
+			}
+			return measured(new ResizeMetrics(getClass().getSimpleName(), srcWidth, srcHeight, dstWidth, dstHeight,
+					nrChannels), resize);
+		} finally {
+			ResizeEvents.commitResize(event);
+		}
+	}
 
-		if (unsharpenMask!= UnsharpenMask.None){
+	private <T, E extends Exception> T measured(ResizeMetrics metrics, Resize<T, E> resize) throws E {
+		// the metrics are found by doFilter through ResizeMetrics.current()
+		final ResizeMetrics previous = ResizeMetrics.current();
+		ResizeMetrics.setCurrent(metrics);
+		T result;
+		try {
+			result = resize.run(metrics);
+		} finally {
+			ResizeMetrics.setCurrent(previous);
+		}
+		metrics.finish();
+		for (MetricsListener metricsListener : metricsListeners) {
+			metricsListener.notifyMetrics(metrics);
+		}
+		return result;
+	}
+
+	/**
+	 * Applies the unsharp mask to the result of an op which does not sharpen in {@link #doFilter}.
+	 *
+	 * @param metrics the metrics of the resize, or null if it is not measured
+	 */
+	private BufferedImage sharpenAfterDoFilter(BufferedImage bufferedImage, ResizeMetrics metrics){
+		if (isSharpenedByDoFilter() || unsharpenMask == UnsharpenMask.None){
+			return bufferedImage;
+		}
+		final Object event = ResizeEvents.beginPhase();
+		final long start = System.nanoTime();
+		bufferedImage = applyUnsharpenMask(bufferedImage);
+		ResizeMetrics.lap(metrics, ResizeMetrics.Phase.Sharpen, start);
+		ResizeEvents.commitPhase(event, ResizeMetrics.Phase.Sharpen);
+		return bufferedImage;
+	}
+
+	/**
+	 * @return true if {@link #doFilter} applies the unsharp mask itself, before the result is stored in the image
+	 */
+	boolean isSharpenedByDoFilter(){
+		return false;
+	}
+
+	/**
+	 * @return the name of the filter or sampling of the op, recorded in the flight recorder events. Null if the op has
+	 * none.
+	 */
+	String getFilterName(){
+		return null;
+	}
+
+	/**
+	 * @return the number of threads the op resizes with
+	 */
+	int getNumberOfThreads(){
+		return 1;
+	}
+
+	/**
+	 * @return the size of the result for a source of srcWidth x srcHeight
+	 */
+	Dimension getDestinationDimension(int srcWidth, int srcHeight){
+		return dimensionConstrain.getDimension(new Dimension(srcWidth, srcHeight));
+	}
+
+	/**
+	 * Sharpens the resized image according to {@link #getUnsharpenMask()}. Images with direct access to their pixels
+	 * (see {@link DirectRaster}) are sharpened in place, others are sharpened into a new image by the jhlabs
+	 * UnsharpFilter.
+	 *
+	 * @return the sharpened image
+	 */
+	BufferedImage applyUnsharpenMask(BufferedImage bufferedImage){
+		if (unsharpenMask == UnsharpenMask.None){
+			return bufferedImage;
+		}
+		final DirectRaster raster = DirectRaster.of(bufferedImage);
+		if (raster == null){
 			UnsharpFilter unsharpFilter= new UnsharpFilter();
-			unsharpFilter.setRadius(2f);
+			unsharpFilter.setRadius(UnsharpMask.RADIUS);
 			unsharpFilter.setAmount(unsharpenMask.factor);
-			unsharpFilter.setThreshold(10);
+			unsharpFilter.setThreshold(UnsharpMask.THRESHOLD);
 			return  unsharpFilter.filter(bufferedImage, null);
 		}
-
+		final int width = bufferedImage.getWidth();
+		final int height = bufferedImage.getHeight();
+		final int nrChannels = ImageUtils.nrChannels(bufferedImage);
+		final byte[] pixels = new byte[width * height * nrChannels];
+		raster.getPixels(pixels, 0, width, height);
+		sharpen(pixels, width, height, nrChannels, bufferedImage.isAlphaPremultiplied());
+		raster.setPixels(pixels, 0, 0, width, height);
 		return bufferedImage;
 	}
 
+	/**
+	 * Applies the unsharp mask to band ordered pixels in the calling thread.
+	 */
+	void sharpen(byte[] pixels, int width, int height, int nrChannels, boolean premultiplied){
+		createUnsharpMask(width, height, nrChannels, premultiplied).apply(pixels);
+	}
+
+	UnsharpMask createUnsharpMask(int width, int height, int nrChannels, boolean premultiplied){
+		return new UnsharpMask(unsharpenMask.factor, width, height, nrChannels, premultiplied);
+	}
+
 	protected abstract BufferedImage doFilter(BufferedImage src, BufferedImage dest, int dstWidth, int dstHeight);
 
 	/**
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Resizes with the op and settings best suited to the scale at hand, so callers only choose a quality.
+ *
+ * For each image a plan is made from the source size, the destination size and the number of channels:
+ * <ul>
+ *     <li>{@link Quality#Best} uses a {@link ResampleOp} with the Lanczos3 filter in linear light.</li>
+ *     <li>{@link Quality#Balanced} uses a {@link ResampleOp} with fixed point arithmetic and pre-reduction, with the
+ *     Lanczos3 filter when reducing and the Mitchell filter when enlarging.</li>
+ *     <li>{@link Quality#Fast} uses a {@link ThumbnailRescaleOp} when reducing at least {@value #THUMBNAIL_MIN_RATIO}
+ *     times, and a {@link ResampleOp} with the triangle (bilinear) filter otherwise.</li>
+ * </ul>
+ * When a time budget is set, the cost of the plan is estimated and lower qualities are tried until the estimate fits
+ * the budget. Small images are resized by the calling thread only, since handing them to other threads costs more
+ * than it saves.
+ *
+ * The result of the Fast quality is an int RGB or ARGB image when a ThumbnailRescaleOp is used, the others return the
+ * type of {@link ResampleOp}.
+ */
+public class AutoResizeOp extends AdvancedResizeOp {
+	public static enum Quality{
+		Fast,
+		Balanced,
+		Best
+	}
+
+	/**
+	 * The minimum reduction for which the Fast quality samples with a ThumbnailRescaleOp.
+	 */
+	static final int THUMBNAIL_MIN_RATIO = 4;
+
+	/**
+	 * The minimum reduction for which a ThumbnailRescaleOp takes 8 instead of 4 samples per pixel.
+	 */
+	private static final int THUMBNAIL_8ROCKS_RATIO = 8;
+
+	// The cost model, in nanoseconds on a single core, measured by resizing a 4000x3000 TYPE_3BYTE_BGR image to
+	// sizes from 2000x1500 down to 200x150 and up from 500x400 to 2000x1600.
+	/**
+	 * A source sample multiplied by a weight in a resample pass, with float and with fixed point arithmetic
+	 */
+	static final double NANOS_PER_CONTRIBUTION = 2.0;
+	static final double NANOS_PER_CONTRIBUTION_FIXED = 1.1;
+	/**
+	 * The factor linear light adds to the resample passes
+	 */
+	static final double LINEAR_LIGHT_FACTOR = 1.3;
+	/**
+	 * A source sample averaged by the pre-reduction
+	 */
+	static final double NANOS_PER_REDUCED_SAMPLE = 3.5;
+	/**
+	 * A pixel sampled by a ThumbnailRescaleOp
+	 */
+	static final double NANOS_PER_THUMBNAIL_SAMPLE = 5.0;
+	/**
+	 * Estimates below this are done by the calling thread only.
+	 */
+	static final long PARALLEL_MIN_NANOS = 2000000;
+
+	private Quality quality = Quality.Balanced;
+	private long timeBudget = 0;
+
+	public AutoResizeOp(int destWidth, int destHeight) {
+		this(DimensionConstrain.createAbsolutionDimension(destWidth, destHeight));
+	}
+
+	public AutoResizeOp(DimensionConstrain dimensionConstrain) {
+		super(dimensionConstrain);
+	}
+
+	public AutoResizeOp(int destWidth, int destHeight, final ExecutorService executor) {
+		this(DimensionConstrain.createAbsolutionDimension(destWidth, destHeight), executor);
+	}
+
+	public AutoResizeOp(DimensionConstrain dimensionConstrain, final ExecutorService executor) {
+		super(dimensionConstrain, executor);
+	}
+
+	public Quality getQuality() {
+		return quality;
+	}
+
+	public void setQuality(Quality quality) {
+		this.quality = quality;
+	}
+
+	public long getTimeBudget() {
+		return timeBudget;
+	}
+
+	/**
+	 * @param timeBudget the time in milliseconds a resize should take at most, 0 for no limit. The budget is compared
+	 *                      with the estimated cost, it is not a timeout.
+	 */
+	public void setTimeBudget(long timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+
+	/**
+	 * The unsharp mask is applied by the op of the plan, or by {@link #doFilter} afterwards.
+	 */
+	@Override
+	boolean isSharpenedByDoFilter() {
+		return true;
+	}
+
+	protected BufferedImage doFilter(BufferedImage src, BufferedImage dest, int dstWidth, int dstHeight) {
+		final Plan plan = createPlan(src.getWidth(), src.getHeight(), ImageUtils.nrChannels(src), dstWidth, dstHeight);
+		final AdvancedResizeOp op = plan.op;
+		ResizeEvents.describe(op);
+		op.setUnsharpenMask(getUnsharpenMask());
+		if (hasProgressListeners()){
+			op.addProgressListener(this::fireProgressChanged);
+		}
+		final BufferedImage result = op.doFilter(src, dest, dstWidth, dstHeight);
+		if (op.isSharpenedByDoFilter() || getUnsharpenMask() == UnsharpenMask.None){
+			return result;
+		}
+		final Object event = ResizeEvents.beginPhase();
+		final long start = System.nanoTime();
+		final BufferedImage sharpened = op.applyUnsharpenMask(result);
+		ResizeMetrics.lap(ResizeMetrics.current(), ResizeMetrics.Phase.Sharpen, start);
+		ResizeEvents.commitPhase(event, ResizeMetrics.Phase.Sharpen);
+		return sharpened;
+	}
+
+	/**
+	 * @return the plan of the quality of the op, or of the best lower quality which is estimated to fit the time budget
+	 */
+	Plan createPlan(int srcWidth, int srcHeight, int nrChannels, int dstWidth, int dstHeight) {
+		Quality planQuality = quality;
+		while (true) {
+			final Plan plan = createPlan(planQuality, srcWidth, srcHeight, nrChannels, dstWidth, dstHeight);
+			if (timeBudget <= 0 || plan.estimatedNanos <= timeBudget * 1000000 || planQuality == Quality.Fast){
+				return plan;
+			}
+			planQuality = Quality.values()[planQuality.ordinal() - 1];
+		}
+	}
+
+	private Plan createPlan(Quality quality, int srcWidth, int srcHeight, int nrChannels, int dstWidth,
+							int dstHeight) {
+		final float ratio = Math.min(srcWidth / (float) dstWidth, srcHeight / (float) dstHeight);
+		final DimensionConstrain size = DimensionConstrain.createAbsolutionDimension(dstWidth, dstHeight);
+		final int processors = Runtime.getRuntime().availableProcessors();
+		if (quality == Quality.Fast && ratio >= THUMBNAIL_MIN_RATIO){
+			final ThumbnailRescaleOp op = new ThumbnailRescaleOp(size, getExecutorService());
+			final ThumbnailRescaleOp.Sampling sampling = ratio >= THUMBNAIL_8ROCKS_RATIO ?
+					ThumbnailRescaleOp.Sampling.S_8ROCKS : ThumbnailRescaleOp.Sampling.S_2X2_RGSS;
+			op.setSampling(sampling);
+			final long nanos = (long) ((double) dstWidth * dstHeight * sampling.points.length
+					* NANOS_PER_THUMBNAIL_SAMPLE);
+			op.setNumberOfThreads(nanos < PARALLEL_MIN_NANOS ? 1 : processors);
+			return new Plan(op, nanos / op.getNumberOfThreads());
+		}
+
+		final ResampleOp op = new ResampleOp(size, getExecutorService());
+		switch (quality) {
+		case Fast:
+			op.setFilter(ResampleFilters.getTriangleFilter());
+			op.setFixedPointArithmetic(true);
+			op.setPreReduction(true);
+			break;
+		case Balanced:
+			op.setFilter(ratio >= 1 ? ResampleFilters.getLanczos3Filter() : ResampleFilters.getMitchellFilter());
+			op.setFixedPointArithmetic(true);
+			op.setPreReduction(true);
+			break;
+		case Best:
+			op.setFilter(ResampleFilters.getLanczos3Filter());
+			op.setLinearLight(true);
+			break;
+		}
+		final long nanos = estimateResampleNanos(op, srcWidth, srcHeight, nrChannels, dstWidth, dstHeight);
+		op.setNumberOfThreads(nanos < PARALLEL_MIN_NANOS ? 1 : processors);
+		return new Plan(op, nanos / op.getNumberOfThreads());
+	}
+
+	/**
+	 * @return the estimated time of the op on a single core
+	 */
+	static long estimateResampleNanos(ResampleOp op, int srcWidth, int srcHeight, int nrChannels, int dstWidth,
+									  int dstHeight) {
+		double nanos = 0;
+		if (op.isPreReduction()){
+			final int factorX = ResampleOp.preReductionFactor(srcWidth, dstWidth);
+			final int factorY = ResampleOp.preReductionFactor(srcHeight, dstHeight);
+			if (factorX > 1 || factorY > 1){
+				nanos += (double) srcWidth * srcHeight * nrChannels * NANOS_PER_REDUCED_SAMPLE;
+				srcWidth = (srcWidth + factorX - 1) / factorX;
+				srcHeight = (srcHeight + factorY - 1) / factorY;
+			}
+		}
+		final float radius = op.getFilter().getSamplingRadius();
+		final double contributorsX = 2 * radius * Math.max(1, srcWidth / (double) dstWidth);
+		final double contributorsY = 2 * radius * Math.max(1, srcHeight / (double) dstHeight);
+		final double contributions = ((double) srcHeight * dstWidth * contributorsX
+				+ (double) dstHeight * dstWidth * contributorsY) * nrChannels;
+		final double nanosPerContribution = op.isLinearLight() ? NANOS_PER_CONTRIBUTION * LINEAR_LIGHT_FACTOR :
+				(op.isFixedPointArithmetic() ? NANOS_PER_CONTRIBUTION_FIXED : NANOS_PER_CONTRIBUTION);
+		return (long) (nanos + contributions * nanosPerContribution);
+	}
+
+	/**
+	 * The op chosen for an image, with the estimated time it takes on the threads it uses
+	 */
+	static final class Plan {
+		final AdvancedResizeOp op;
+		final long estimatedNanos;
+
+		Plan(AdvancedResizeOp op, long estimatedNanos) {
+			this.op = op;
+			this.estimatedNanos = estimatedNanos;
+		}
+	}
+}
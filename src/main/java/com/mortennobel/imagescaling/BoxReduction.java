@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Reduces an image by integral factors, each pixel of the result is the average of a block of factorX by factorY
+ * source pixels. The last column and row of blocks may be smaller, their pixels are averaged over the source pixels
+ * they cover.
+ *
+ * Every source pixel is read once, so the cost does not depend on the factors. This is used by {@link ResampleOp} to
+ * bring large images close to the destination size before the filter is applied, see
+ * {@link ResampleOp#setPreReduction(boolean)}. The result is stored with the samples in band order.
+ */
+final class BoxReduction {
+	private final BufferedImage src;
+	private final DirectRaster directRaster;
+	private final int nrChannels;
+	private final int factorX;
+	private final int factorY;
+	private final boolean linearLight;
+	final int width;
+	final int height;
+
+	/**
+	 * @param linearLight true to average the color samples in linear light
+	 */
+	BoxReduction(BufferedImage src, int nrChannels, int factorX, int factorY, boolean linearLight) {
+		this.src = src;
+		this.directRaster = DirectRaster.of(src);
+		this.nrChannels = nrChannels;
+		this.factorX = factorX;
+		this.factorY = factorY;
+		this.linearLight = linearLight;
+		this.width = (src.getWidth() + factorX - 1) / factorX;
+		this.height = (src.getHeight() + factorY - 1) / factorY;
+	}
+
+	/**
+	 * Stores the reduced rows from..to-1 in pixels, which holds width * height pixels in band order.
+	 */
+	void reduceRows(byte[] pixels, int from, int to, int step) {
+		final int srcWidth = src.getWidth();
+		final byte[] row = new byte[srcWidth * nrChannels];
+		final int[] temp = directRaster == null ? new int[srcWidth] : null;
+		final long[] sums = new long[width * nrChannels];
+		final boolean useChannel3 = nrChannels > 3;
+		for (int y = from; y < to; y += step) {
+			final int firstRow = y * factorY;
+			final int lastRow = Math.min(src.getHeight(), firstRow + factorY);
+			Arrays.fill(sums, 0);
+			for (int srcY = firstRow; srcY < lastRow; srcY++) {
+				if (directRaster != null){
+					directRaster.getRow(srcY, srcWidth, row);
+				} else {
+					ImageUtils.getPixelsBGR(src, srcY, srcWidth, row, temp);
+				}
+				final int blockLength = factorX * nrChannels;
+				for (int blockStart = 0, sumIndex = 0; blockStart < row.length; blockStart += blockLength,
+						sumIndex += nrChannels) {
+					final int blockEnd = Math.min(row.length, blockStart + blockLength);
+					for (int c = 0; c < nrChannels; c++) {
+						long sum = 0;
+						if (linearLight && !(useChannel3 && c == 3)){
+							for (int i = blockStart + c; i < blockEnd; i += nrChannels) {
+								sum += (long) LinearLight.TO_LINEAR[row[i] & 0xff];
+							}
+						} else {
+							for (int i = blockStart + c; i < blockEnd; i += nrChannels) {
+								sum += row[i] & 0xff;
+							}
+						}
+						sums[sumIndex + c] += sum;
+					}
+				}
+			}
+
+			final int rowIndex = y * width * nrChannels;
+			for (int x = 0; x < width; x++) {
+				final long count = (long) (lastRow - firstRow) * (Math.min(srcWidth, (x + 1) * factorX) - x * factorX);
+				for (int c = 0; c < nrChannels; c++) {
+					final int i = x * nrChannels + c;
+					if (linearLight && !(useChannel3 && c == 3)){
+						pixels[rowIndex + i] = (byte) LinearLight.toSRGB(sums[i] / (float) count);
+					} else {
+						pixels[rowIndex + i] = (byte) ((sums[i] + count / 2) / count);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+/**
+ * A pool of the byte arrays a resample operation needs while it runs: the horizontally scaled work image and the
+ * destination pixels. Reusing the arrays avoids allocating several megabytes for every image, which matters when many
+ * images are resized. Implementations must be thread safe.
+ *
+ * @see StripedBufferPool
+ * @see ResampleOp#setBufferPool(BufferPool)
+ */
+public interface BufferPool {
+
+	/**
+	 * @return an array of at least length bytes. The content of the array is undefined.
+	 */
+	byte[] borrow(int length);
+
+	/**
+	 * Returns an array obtained from {@link #borrow(int)} to the pool. The caller must not use the array afterwards.
+	 */
+	void release(byte[] buffer);
+}
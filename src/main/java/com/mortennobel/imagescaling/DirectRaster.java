@@ -0,0 +1,204 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Direct access to the array behind the raster of a {@link BufferedImage}, which avoids copying the pixels through
+ * {@link java.awt.image.Raster#getDataElements(int, int, int, int, Object)}.
+ *
+ * Supported are the byte interleaved types (TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR, TYPE_4BYTE_ABGR_PRE and TYPE_BYTE_GRAY)
+ * and the int packed types (TYPE_INT_RGB, TYPE_INT_BGR, TYPE_INT_ARGB and TYPE_INT_ARGB_PRE). Sub images are supported,
+ * the scanline stride and the offsets of the raster are honoured.
+ *
+ * The samples are addressed in band order, which is the order used by {@link ImageUtils#getPixelsBGR}: red, green,
+ * blue and alpha, or a single gray band. Note that the image is no longer accelerated by Java2D once its array has been
+ * accessed directly.
+ *
+ * @author Morten Nobel-Joergensen
+ */
+final class DirectRaster {
+	private final byte[] bytes;
+	private final int[] ints;
+	private final int nrChannels;
+	private final int offset; // index of the first sample of pixel (0,0)
+	private final int scanlineStride;
+	private final int pixelStride;
+	private final int[] bandOffsets; // byte rasters: index of a band within a pixel, int rasters: bit offset of a band
+
+	private DirectRaster(byte[] bytes, int[] ints, int nrChannels, int offset, int scanlineStride, int pixelStride,
+						 int[] bandOffsets) {
+		this.bytes = bytes;
+		this.ints = ints;
+		this.nrChannels = nrChannels;
+		this.offset = offset;
+		this.scanlineStride = scanlineStride;
+		this.pixelStride = pixelStride;
+		this.bandOffsets = bandOffsets;
+	}
+
+	/**
+	 * @return direct access to the pixels of img, or null if the layout of the image is not supported
+	 */
+	static DirectRaster of(BufferedImage img) {
+		final int nrChannels = ImageUtils.nrChannels(img);
+		final WritableRaster raster = img.getRaster();
+		final SampleModel sampleModel = raster.getSampleModel();
+		final DataBuffer dataBuffer = raster.getDataBuffer();
+		if (dataBuffer.getNumBanks() != 1 || sampleModel.getNumBands() != nrChannels){
+			return null;
+		}
+		switch (img.getType()) {
+		case BufferedImage.TYPE_3BYTE_BGR:
+		case BufferedImage.TYPE_4BYTE_ABGR:
+		case BufferedImage.TYPE_4BYTE_ABGR_PRE:
+		case BufferedImage.TYPE_BYTE_GRAY:
+			if (!(sampleModel instanceof ComponentSampleModel) || !(dataBuffer instanceof DataBufferByte)){
+				return null;
+			}
+			final ComponentSampleModel componentSampleModel = (ComponentSampleModel) sampleModel;
+			return new DirectRaster(((DataBufferByte) dataBuffer).getData(), null, nrChannels,
+					offset(raster, componentSampleModel.getScanlineStride(), componentSampleModel.getPixelStride()),
+					componentSampleModel.getScanlineStride(), componentSampleModel.getPixelStride(),
+					componentSampleModel.getBandOffsets());
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_INT_BGR:
+		case BufferedImage.TYPE_INT_ARGB:
+		case BufferedImage.TYPE_INT_ARGB_PRE:
+			if (!(sampleModel instanceof SinglePixelPackedSampleModel) || !(dataBuffer instanceof DataBufferInt)){
+				return null;
+			}
+			final SinglePixelPackedSampleModel packedSampleModel = (SinglePixelPackedSampleModel) sampleModel;
+			final int[] bitOffsets = packedSampleModel.getBitOffsets();
+			final int[] bitMasks = packedSampleModel.getBitMasks();
+			for (int i = 0; i < nrChannels; i++) {
+				if (bitMasks[i] != 0xff << bitOffsets[i]){
+					return null;
+				}
+			}
+			return new DirectRaster(null, ((DataBufferInt) dataBuffer).getData(), nrChannels,
+					offset(raster, packedSampleModel.getScanlineStride(), 1),
+					packedSampleModel.getScanlineStride(), 1, bitOffsets);
+		}
+		return null;
+	}
+
+	private static int offset(WritableRaster raster, int scanlineStride, int pixelStride) {
+		return raster.getDataBuffer().getOffset() - raster.getSampleModelTranslateY() * scanlineStride
+				- raster.getSampleModelTranslateX() * pixelStride;
+	}
+
+	/**
+	 * @return true if the samples are stored in a byte array, which {@link #getBytes()} returns
+	 */
+	boolean isByteData() {
+		return bytes != null;
+	}
+
+	/**
+	 * @return the backing array of a byte raster
+	 */
+	byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the backing array of an int raster
+	 */
+	int[] getInts() {
+		return ints;
+	}
+
+	/**
+	 * @return the index of the first element of row y in the backing array
+	 */
+	int getRowOffset(int y) {
+		return offset + y * scanlineStride;
+	}
+
+	/**
+	 * @return the distance between two pixels in the backing array
+	 */
+	int getPixelStride() {
+		return pixelStride;
+	}
+
+	/**
+	 * @return the index of a band within a pixel in a byte raster, or the bit offset of a band in an int raster
+	 */
+	int getBandOffset(int band) {
+		return bandOffsets[band];
+	}
+
+	/**
+	 * Copies w pixels of row y in band order into row.
+	 */
+	void getRow(int y, int w, byte[] row) {
+		int index = getRowOffset(y);
+		if (bytes != null){
+			for (int c = 0; c < nrChannels; c++) {
+				final int bandOffset = bandOffsets[c];
+				for (int i = c, j = index + bandOffset; i < w * nrChannels; i += nrChannels, j += pixelStride) {
+					row[i] = bytes[j];
+				}
+			}
+		} else {
+			for (int i = 0; i < w * nrChannels; i += nrChannels) {
+				final int value = ints[index++];
+				for (int c = 0; c < nrChannels; c++) {
+					row[i + c] = (byte) (value >>> bandOffsets[c]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the rows y..y+h-1 of width w in band order into pixels.
+	 */
+	void getPixels(byte[] pixels, int y, int w, int h) {
+		final byte[] row = new byte[w * nrChannels];
+		for (int yy = y; yy < y + h; yy++) {
+			getRow(yy, w, row);
+			System.arraycopy(row, 0, pixels, (yy - y) * row.length, row.length);
+		}
+	}
+
+	/**
+	 * Copies the band ordered pixels into the rectangle x, y, w, h.
+	 */
+	void setPixels(byte[] pixels, int x, int y, int w, int h) {
+		int i = 0;
+		for (int yy = y; yy < y + h; yy++) {
+			final int index = getRowOffset(yy) + x * pixelStride;
+			if (bytes != null){
+				for (int c = 0; c < nrChannels; c++) {
+					final int bandOffset = bandOffsets[c];
+					for (int k = i + c, j = index + bandOffset; k < i + w * nrChannels; k += nrChannels, j += pixelStride) {
+						bytes[j] = pixels[k];
+					}
+				}
+				i += w * nrChannels;
+			} else {
+				for (int j = index; j < index + w; j++) {
+					int value = 0;
+					for (int c = 0; c < nrChannels; c++) {
+						value |= (pixels[i++] & 0xff) << bandOffsets[c];
+					}
+					ints[j] = value;
+				}
+			}
+		}
+	}
+}
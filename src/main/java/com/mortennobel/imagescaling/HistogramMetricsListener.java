@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link MetricsListener} which aggregates the times of the resizes in histograms, one for the total time and one per
+ * phase, and keeps the slowest resize. It is thread safe and can be shared between ops.
+ *
+ * The histograms have 8 buckets per power of two, so a percentile is at most 12.5% above the true value.
+ */
+public class HistogramMetricsListener implements MetricsListener {
+	private static final int SUB_BUCKETS = 8;
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int BUCKETS = (62 - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+	private static final int TOTAL = ResizeMetrics.Phase.values().length;
+
+	private final AtomicLongArray histograms = new AtomicLongArray((TOTAL + 1) * BUCKETS);
+	private final AtomicLongArray sums = new AtomicLongArray(TOTAL + 1);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sourcePixels = new AtomicLong();
+	private final AtomicLong destinationPixels = new AtomicLong();
+	private final AtomicLong allocatedBytes = new AtomicLong();
+	private final AtomicReference<ResizeMetrics> slowest = new AtomicReference<>();
+
+	public void notifyMetrics(ResizeMetrics metrics) {
+		for (ResizeMetrics.Phase phase : ResizeMetrics.Phase.values()) {
+			final long nanos = metrics.getPhaseNanos(phase);
+			if (nanos > 0){
+				add(phase.ordinal(), nanos);
+			}
+		}
+		add(TOTAL, metrics.getTotalNanos());
+		count.incrementAndGet();
+		sourcePixels.addAndGet(metrics.getSourcePixels());
+		destinationPixels.addAndGet(metrics.getDestinationPixels());
+		if (metrics.getAllocatedBytes() > 0){
+			allocatedBytes.addAndGet(metrics.getAllocatedBytes());
+		}
+		ResizeMetrics previous;
+		do {
+			previous = slowest.get();
+		} while ((previous == null || previous.getTotalNanos() < metrics.getTotalNanos())
+				&& !slowest.compareAndSet(previous, metrics));
+	}
+
+	private void add(int histogram, long nanos) {
+		histograms.incrementAndGet(histogram * BUCKETS + bucket(nanos));
+		sums.addAndGet(histogram, nanos);
+	}
+
+	static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS){
+			return (int) Math.max(0, nanos);
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS
+				+ (int) ((nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * @return the largest value in the bucket
+	 */
+	static long bucketUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS){
+			return bucket;
+		}
+		final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		final long subBucket = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	private long percentile(int histogram, double percentile) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += histograms.get(histogram * BUCKETS + i);
+		}
+		final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += histograms.get(histogram * BUCKETS + i);
+			if (seen >= rank){
+				return bucketUpperBound(i);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the number of resizes
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @param percentile between 0 and 100, e.g. 99 for the time 99% of the resizes took at most
+	 * @return the total time of a resize at the percentile, 0 if there were none
+	 */
+	public long getPercentileNanos(double percentile) {
+		return percentile(TOTAL, percentile);
+	}
+
+	/**
+	 * @return the time of the phase at the percentile, among the resizes which measured the phase
+	 */
+	public long getPercentileNanos(ResizeMetrics.Phase phase, double percentile) {
+		return percentile(phase.ordinal(), percentile);
+	}
+
+	public long getTotalNanos() {
+		return sums.get(TOTAL);
+	}
+
+	public long getTotalNanos(ResizeMetrics.Phase phase) {
+		return sums.get(phase.ordinal());
+	}
+
+	public long getSourcePixels() {
+		return sourcePixels.get();
+	}
+
+	public long getDestinationPixels() {
+		return destinationPixels.get();
+	}
+
+	/**
+	 * @return the bytes allocated by the calling threads of all resizes, see {@link ResizeMetrics#getAllocatedBytes()}
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes.get();
+	}
+
+	/**
+	 * @return the source pixels resized per second
+	 */
+	public double getSourcePixelsPerSecond() {
+		final long nanos = getTotalNanos();
+		return nanos == 0 ? 0 : getSourcePixels() * 1e9 / nanos;
+	}
+
+	/**
+	 * @return the metrics of the slowest resize, or null if there were none
+	 */
+	public ResizeMetrics getSlowest() {
+		return slowest.get();
+	}
+}
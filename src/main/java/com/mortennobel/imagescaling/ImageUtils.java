@@ -8,6 +8,7 @@ package com.mortennobel.imagescaling;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
 import javax.imageio.ImageWriter;
 import javax.imageio.metadata.IIOMetadata;
@@ -27,10 +28,21 @@ import java.util.Iterator;
  * @author Morten Nobel-Joergensen
  */
 public class ImageUtils {
-
+	/**
+	 * The factor an image decoded with source subsampling is kept above the destination size, so the final resize
+	 * still has enough samples to filter.
+	 */
+	private static final int SUBSAMPLING_MARGIN = 2;
 
 	static public String imageTypeName(BufferedImage img) {
-		switch (img.getType()) {
+		return imageTypeName(img.getType());
+	}
+
+	/**
+	 * @param type one of the BufferedImage.TYPE_ constants
+	 */
+	static String imageTypeName(int type) {
+		switch (type) {
 		case BufferedImage.TYPE_3BYTE_BGR: return "TYPE_3BYTE_BGR";
 		case BufferedImage.TYPE_4BYTE_ABGR: return "TYPE_4BYTE_ABGR";
 		case BufferedImage.TYPE_4BYTE_ABGR_PRE: return "TYPE_4BYTE_ABGR_PRE";
@@ -46,7 +58,7 @@ public class ImageUtils {
 		case BufferedImage.TYPE_USHORT_565_RGB: return "TYPE_USHORT_565_RGB";
 		case BufferedImage.TYPE_USHORT_GRAY: return "TYPE_USHORT_GRAY";
 		}
-		return "unknown image type #" + img.getType();
+		return "unknown image type #" + type;
 	}
 
 	static public int nrChannels(BufferedImage img) {
@@ -73,6 +85,8 @@ public class ImageUtils {
 	 *
 	 * returns one row (height == 1) of byte packed image data in BGR or AGBR form
 	 *
+	 * Byte interleaved and int packed images are read directly from their data buffer.
+	 *
 	 * @param img
 	 * @param y
 	 * @param w
@@ -81,12 +95,27 @@ public class ImageUtils {
 	 * @return
 	 */
 	public static byte[] getPixelsBGR(BufferedImage img, int y, int w, byte[] array, int[] temp) {
+		return getPixelsBGR(img, DirectRaster.of(img), y, w, array, temp);
+	}
+
+	/**
+	 * Version of {@link #getPixelsBGR(BufferedImage, int, int, byte[], int[])} for callers reading many rows, which
+	 * wrap the raster once.
+	 *
+	 * @param directRaster the direct access to the pixels of img, see {@link DirectRaster#of}, or null if it has none
+	 */
+	static byte[] getPixelsBGR(BufferedImage img, DirectRaster directRaster, int y, int w, byte[] array, int[] temp) {
 		final int x= 0;
 		final int h= 1;
 
 		assert array.length == temp.length * nrChannels(img);
 		assert (temp.length == w);
 
+		if (directRaster != null) {
+			directRaster.getRow(y, w, array);
+			return array;
+		}
+
 		int imageType= img.getType();
 		Raster raster;
 		switch (imageType) {
@@ -134,8 +163,31 @@ public class ImageUtils {
 	 *
 	 * does not unmange the image for all (A)RGN and (A)BGR and gray imaged
 	 *
+	 * For byte interleaved and int packed images the pixels are written directly into the data buffer, without
+	 * creating an int array of the whole image.
 	 */
 	public static void setBGRPixels(byte[] bgrPixels, BufferedImage img, int x, int y, int w, int h) {
+		setBGRPixels(bgrPixels, img, DirectRaster.of(img), x, y, w, h);
+	}
+
+	/**
+	 * Version of {@link #setBGRPixels(byte[], BufferedImage, int, int, int, int)} for callers writing many rows, which
+	 * wrap the raster once.
+	 *
+	 * @param directRaster the direct access to the pixels of img, see {@link DirectRaster#of}, or null if it has none
+	 */
+	static void setBGRPixels(byte[] bgrPixels, BufferedImage img, DirectRaster directRaster, int x, int y, int w,
+							 int h) {
+		if (directRaster != null) {
+			if (x < 0 || y < 0 || x + w > img.getWidth() || y + h > img.getHeight()) {
+				throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+			}
+			if (bgrPixels.length < w * h * nrChannels(img)) {
+				throw new IllegalArgumentException("pixels array must have a length" + " >= w*h*channels");
+			}
+			directRaster.setPixels(bgrPixels, x, y, w, h);
+			return;
+		}
 		int imageType= img.getType();
 		WritableRaster raster= img.getRaster();
 		//int ttype= raster.getTransferType();
@@ -274,4 +326,34 @@ public class ImageUtils {
         writer.setOutput(out);
         writer.write(image);
     }
+
+	/**
+	 * @return the largest integral source subsampling that keeps the decoded image at least twice the destination
+	 * size in both directions, or 1 if the image should be decoded at full size
+	 */
+	public static int getSourceSubsampling(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+		return Math.max(1, Math.min(srcWidth / (SUBSAMPLING_MARGIN * dstWidth),
+				srcHeight / (SUBSAMPLING_MARGIN * dstHeight)));
+	}
+
+	/**
+	 * Decodes the first image of the reader with the subsampling of
+	 * {@link #getSourceSubsampling(int, int, int, int)}. Only every n'th pixel of every n'th row is decoded, which
+	 * reduces decode time and memory by about n*n. The first pixel of each n x n block is sampled, so pixel x of the
+	 * decoded image is pixel x*n of the image and the resized image is aligned like when the whole image is decoded.
+	 *
+	 * @param reader a reader which input has been set
+	 * @param dstWidth the width the image will be resized to
+	 * @param dstHeight the height the image will be resized to
+	 * @return the decoded image, at least twice the destination size unless the image is smaller
+	 * @throws IOException if the image could not be decoded
+	 */
+	public static BufferedImage readSubsampled(ImageReader reader, int dstWidth, int dstHeight) throws IOException {
+		final int subsampling = getSourceSubsampling(reader.getWidth(0), reader.getHeight(0), dstWidth, dstHeight);
+		final ImageReadParam param = reader.getDefaultReadParam();
+		if (subsampling > 1) {
+			param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+		}
+		return reader.read(0, param);
+	}
 }
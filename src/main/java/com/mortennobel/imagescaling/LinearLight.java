@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+/**
+ * Lookup tables converting 8 bit sRGB samples to 16 bit linear light and back, used by the linear light mode of
+ * {@link ResampleOp}. Both tables are computed once, so the passes only do a table lookup per sample instead of a
+ * {@link Math#pow(double, double)}.
+ *
+ * Linear light values are in the range 0..{@value #MAX_VALUE}. Alpha is not gamma encoded, it is only scaled to the
+ * same range.
+ */
+final class LinearLight {
+	static final int MAX_VALUE = 0xffff;
+
+	/**
+	 * The linear light value of an sRGB sample, as a float to save a conversion in the filter loops
+	 */
+	static final float[] TO_LINEAR = new float[256];
+
+	/**
+	 * The linear light value of an alpha sample
+	 */
+	static final float[] ALPHA_TO_LINEAR = new float[256];
+
+	/**
+	 * The sRGB sample nearest to a linear light value
+	 */
+	private static final byte[] TO_SRGB = new byte[MAX_VALUE + 1];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			final double value = i / 255.0;
+			final double linear = value <= 0.04045 ? value / 12.92 : Math.pow((value + 0.055) / 1.055, 2.4);
+			TO_LINEAR[i] = Math.round(linear * MAX_VALUE);
+			ALPHA_TO_LINEAR[i] = i * (MAX_VALUE / 255);
+		}
+		for (int i = 0; i <= MAX_VALUE; i++) {
+			final double linear = i / (double) MAX_VALUE;
+			final double value = linear <= 0.0031308 ? linear * 12.92 : 1.055 * Math.pow(linear, 1 / 2.4) - 0.055;
+			TO_SRGB[i] = (byte) Math.round(value * 255);
+		}
+	}
+
+	private LinearLight() {
+	}
+
+	/**
+	 * @return the linear light value nearest to f, clamped to 0..MAX_VALUE
+	 */
+	static int clamp(float f) {
+		if (f < 0){
+			return 0;
+		}
+		if (f > MAX_VALUE){
+			return MAX_VALUE;
+		}
+		return (int) (f + 0.5f);
+	}
+
+	/**
+	 * @return the sRGB sample of a linear light value, in the range 0..255
+	 */
+	static int toSRGB(float f) {
+		return TO_SRGB[clamp(f)] & 0xff;
+	}
+
+	/**
+	 * @return the alpha sample of a linear light value, in the range 0..255
+	 */
+	static int toAlpha(float f) {
+		return (clamp(f) + MAX_VALUE / 510) / (MAX_VALUE / 255);
+	}
+}
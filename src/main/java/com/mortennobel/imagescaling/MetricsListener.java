@@ -0,0 +1,18 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+/**
+ * Receives the timings of each resize of an op, see {@link AdvancedResizeOp#addMetricsListener(MetricsListener)}.
+ * The listener is called by the thread that called filter, after the resize is done. Ops shared between threads call
+ * it concurrently.
+ *
+ * @see HistogramMetricsListener
+ */
+public interface MetricsListener {
+	public void notifyMetrics(ResizeMetrics metrics);
+}
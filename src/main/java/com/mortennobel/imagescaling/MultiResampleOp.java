@@ -0,0 +1,269 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A {@link ResampleOp} that creates several sizes of an image at once, such as the renditions of an uploaded image.
+ *
+ * The source rows are read once for all outputs: the horizontal passes of all destination widths are done together a
+ * few rows at a time, while the rows are in the cache. Outputs with the same width share the horizontal pass, only the
+ * vertical pass is done per output. The horizontally scaled images of all widths are kept in memory at the same
+ * time.
+ *
+ * When cascading is enabled an output is created from a larger output instead of the source, if the larger output is
+ * at least twice its size in both directions. Each output then costs a pass over a smaller image instead of over the
+ * source, and the result is close to resizing the source since the larger output still has twice the samples needed.
+ * The cascaded passes are aligned with the source, see {@link ResampleOp#createSubSampling(ResampleFilter, int, int, float)}.
+ *
+ * {@link #filter(BufferedImage, BufferedImage)} creates the first output only, {@link #filterAll(BufferedImage)}
+ * creates all of them.
+ */
+public class MultiResampleOp extends ResampleOp {
+
+	/**
+	 * The factor a larger output must exceed an output with to be used as its source when cascading.
+	 */
+	private static final int CASCADE_MARGIN = 2;
+
+	/**
+	 * The shift of the destination pixel centers which aligns a cascaded output with the source.
+	 */
+	private static final float CASCADE_SHIFT = -0.5f;
+
+	/**
+	 * The number of source rows scaled horizontally to all widths at a time.
+	 */
+	private static final int SHARED_ROWS = 16;
+
+	private final List<DimensionConstrain> targets;
+	private boolean cascade = false;
+
+	public MultiResampleOp(List<DimensionConstrain> targets) {
+		this(targets, null);
+	}
+
+	/**
+	 * @param targets the size of each output
+	 * @param executor the executor used to run the work of the op, or null to use the shared executor
+	 */
+	public MultiResampleOp(List<DimensionConstrain> targets, ExecutorService executor) {
+		super(firstTarget(targets), executor);
+		this.targets = Collections.unmodifiableList(new ArrayList<>(targets));
+	}
+
+	private static DimensionConstrain firstTarget(List<DimensionConstrain> targets) {
+		if (targets.isEmpty()){
+			throw new IllegalArgumentException("At least one target is needed");
+		}
+		return targets.get(0);
+	}
+
+	public List<DimensionConstrain> getTargets() {
+		return targets;
+	}
+
+	public boolean isCascade() {
+		return cascade;
+	}
+
+	/**
+	 * @param cascade true to create outputs from a larger output when it is at least twice their size, default is false
+	 */
+	public void setCascade(boolean cascade) {
+		this.cascade = cascade;
+	}
+
+	/**
+	 * Creates an output for each target. The resize is measured and recorded like {@link #filter}, with the size of
+	 * the first output as its destination size.
+	 *
+	 * @return the outputs in the order of the targets
+	 */
+	public List<BufferedImage> filterAll(final BufferedImage src) {
+		final Dimension first = getDestinationDimension(src.getWidth(), src.getHeight());
+		return instrumented(src.getWidth(), src.getHeight(), ImageUtils.imageTypeName(src), ImageUtils.nrChannels(src),
+				first.width, first.height, metrics -> resizeAll(src, metrics));
+	}
+
+	/**
+	 * @param metrics the metrics of the resize, or null if it is not measured
+	 */
+	private List<BufferedImage> resizeAll(BufferedImage src, ResizeMetrics metrics) {
+		final Object event = ResizeEvents.beginPhase();
+		final long start = System.nanoTime();
+		final BufferedImage source = convertUnsupportedSource(src);
+		ResizeMetrics.lap(metrics, ResizeMetrics.Phase.Conversion, start);
+		ResizeEvents.commitPhase(event, ResizeMetrics.Phase.Conversion);
+		final int count = targets.size();
+		final Dimension[] dimensions = new Dimension[count];
+		for (int i = 0; i < count; i++) {
+			dimensions[i] = targets.get(i).getDimension(new Dimension(source.getWidth(), source.getHeight()));
+			checkTargetSize(dimensions[i].width, dimensions[i].height);
+		}
+
+		final int[] inputs = findInputs(dimensions, cascade);
+		// one reporter for all passes, so the progress of the outputs adds up to 1
+		ProgressReporter progress = null;
+		if (hasProgressListeners()){
+			int rows = rowsOf(outputsOf(inputs, -1), dimensions, source.getHeight());
+			for (int i = 0; i < count; i++) {
+				rows += rowsOf(outputsOf(inputs, i), dimensions, dimensions[i].height);
+			}
+			progress = new ProgressReporter(this, rows);
+		}
+		final BufferedImage[] outputs = new BufferedImage[count];
+		resize(source, 0f, outputsOf(inputs, -1), dimensions, outputs, progress);
+		for (int i : sortedBySize(dimensions)) {
+			final List<Integer> cascaded = outputsOf(inputs, i);
+			if (!cascaded.isEmpty()){
+				resize(outputs[i], CASCADE_SHIFT, cascaded, dimensions, outputs, progress);
+			}
+		}
+		if (progress != null){
+			// the last rows may have been processed by other threads after the last report
+			progress.flush();
+		}
+
+		final List<BufferedImage> result = new ArrayList<>(count);
+		for (BufferedImage output : outputs) {
+			result.add(applyUnsharpenMask(output));
+		}
+		return result;
+	}
+
+	/**
+	 * @return for each output the index of the output it is created from, or -1 for the source
+	 */
+	static int[] findInputs(Dimension[] dimensions, boolean cascade) {
+		final int[] inputs = new int[dimensions.length];
+		Arrays.fill(inputs, -1);
+		if (!cascade){
+			return inputs;
+		}
+		final Integer[] sorted = sortedBySize(dimensions);
+		for (int i = 1; i < sorted.length; i++) {
+			final Dimension dimension = dimensions[sorted[i]];
+			// the smallest of the larger outputs which is large enough
+			for (int j = i - 1; j >= 0; j--) {
+				final Dimension larger = dimensions[sorted[j]];
+				if (larger.width >= CASCADE_MARGIN * dimension.width
+						&& larger.height >= CASCADE_MARGIN * dimension.height){
+					inputs[sorted[i]] = sorted[j];
+					break;
+				}
+			}
+		}
+		return inputs;
+	}
+
+	/**
+	 * @return the indices of the outputs, largest first
+	 */
+	private static Integer[] sortedBySize(final Dimension[] dimensions) {
+		final Integer[] sorted = new Integer[dimensions.length];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = i;
+		}
+		Arrays.sort(sorted, (a, b) -> Long.compare((long) dimensions[b].width * dimensions[b].height,
+				(long) dimensions[a].width * dimensions[a].height));
+		return sorted;
+	}
+
+	private static List<Integer> outputsOf(int[] inputs, int input) {
+		final List<Integer> outputs = new ArrayList<>();
+		for (int i = 0; i < inputs.length; i++) {
+			if (inputs[i] == input){
+				outputs.add(i);
+			}
+		}
+		return outputs;
+	}
+
+	/**
+	 * @return the number of rows {@link #resize} processes to create the outputs from an input of inputHeight rows: the
+	 * horizontal pass of each width and the vertical pass of each output
+	 */
+	private static int rowsOf(List<Integer> indices, Dimension[] dimensions, int inputHeight) {
+		int rows = 0;
+		final Set<Integer> widths = new HashSet<>();
+		for (int i : indices) {
+			if (widths.add(dimensions[i].width)){
+				rows += inputHeight;
+			}
+			rows += dimensions[i].height;
+		}
+		return rows;
+	}
+
+	/**
+	 * Creates the given outputs from src, sharing the horizontal pass of outputs with the same width.
+	 *
+	 * @param progress counts the rows of all passes of {@link #filterAll}, null if the op has no progress listeners
+	 */
+	private void resize(final BufferedImage src, float shift, List<Integer> indices, Dimension[] dimensions,
+						BufferedImage[] outputs, ProgressReporter progress) {
+		final Map<Integer, List<Integer>> byWidth = new LinkedHashMap<>();
+		for (int i : indices) {
+			byWidth.computeIfAbsent(dimensions[i].width, width -> new ArrayList<>()).add(i);
+		}
+		final int widths = byWidth.size();
+		final ResampleContext[][] contexts = new ResampleContext[widths][];
+		final WorkRows[] workPixels = new WorkRows[widths];
+		int w = 0;
+		for (List<Integer> sameWidth : byWidth.values()) {
+			contexts[w] = new ResampleContext[sameWidth.size()];
+			for (int k = 0; k < sameWidth.size(); k++) {
+				final Dimension dimension = dimensions[sameWidth.get(k)];
+				contexts[w][k] = new ResampleContext(ImageUtils.nrChannels(src), src.getWidth(), src.getHeight(),
+						dimension.width, dimension.height, shift, shift, progress);
+			}
+			workPixels[w] = new WorkRows(contexts[w][0].bufferPool, contexts[w][0].workRowLength(), src.getHeight());
+			w++;
+		}
+
+		final Object horizontalEvent = ResizeEvents.beginPhase();
+		final long horizontalStart = System.nanoTime();
+		processPartitioned(contexts[0][0], src.getHeight(), (from, to, step, reportProgress) -> {
+			if (step != 1){
+				for (int i = 0; i < widths; i++) {
+					contexts[i][0].horizontallyFromSrcToWork(src, workPixels[i], from, to, step, reportProgress);
+				}
+				return;
+			}
+			for (int start = from; start < to; start += SHARED_ROWS) {
+				final int end = Math.min(to, start + SHARED_ROWS);
+				for (int i = 0; i < widths; i++) {
+					contexts[i][0].horizontallyFromSrcToWork(src, workPixels[i], start, end, 1, reportProgress);
+				}
+			}
+		});
+		ResizeMetrics.lap(contexts[0][0].metrics, ResizeMetrics.Phase.Horizontal, horizontalStart);
+		ResizeEvents.commitPhase(horizontalEvent, ResizeMetrics.Phase.Horizontal);
+
+		w = 0;
+		for (List<Integer> sameWidth : byWidth.values()) {
+			for (int k = 0; k < sameWidth.size(); k++) {
+				outputs[sameWidth.get(k)] = verticallyFromWorkToImage(contexts[w][k], workPixels[w], src, null, false);
+			}
+			workPixels[w].release(contexts[w][0].bufferPool);
+			workPixels[w] = null;
+			w++;
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the rows processed by all threads of a resize, and passes the progress to the {@link ProgressListener}s of
+ * the op. The listeners are only notified by the reporting thread: for its first row, when the progress has advanced
+ * at least {@link #MIN_FRACTION_DELTA} since the last notification, when the resize is done, and at the end of each
+ * pass by {@link #flush()}. A resize thereby notifies them about 100 times however many rows it has, and the last
+ * notification is 1 even if another thread processed the last rows.
+ *
+ * The rows are counted in a {@link LongAdder}, which threads can increment concurrently without contending on a
+ * single value.
+ */
+final class ProgressReporter {
+	static final float MIN_FRACTION_DELTA = 0.01f;
+
+	private final AdvancedResizeOp op;
+	private final LongAdder processedItems = new LongAdder();
+	private final float totalItems;
+	// only accessed by the reporting thread, below any fraction so the first row is always reported
+	private float reportedFraction = -1f;
+
+	ProgressReporter(AdvancedResizeOp op, int totalItems) {
+		this.op = op;
+		this.totalItems = totalItems;
+	}
+
+	/**
+	 * @param report true if the calling thread is the one reporting progress
+	 */
+	void itemProcessed(boolean report) {
+		processedItems.increment();
+		if (report){
+			final float fraction = fraction();
+			if (fraction - reportedFraction >= MIN_FRACTION_DELTA || (fraction == 1f && reportedFraction < 1f)){
+				notifyListeners(fraction);
+			}
+		}
+	}
+
+	/**
+	 * Notifies the listeners of the rows processed since the last notification. Called by the reporting thread when
+	 * all threads have finished a pass.
+	 */
+	void flush() {
+		final float fraction = fraction();
+		if (fraction > reportedFraction){
+			notifyListeners(fraction);
+		}
+	}
+
+	private float fraction() {
+		return Math.min(1f, processedItems.sum() / totalItems);
+	}
+
+	private void notifyListeners(float fraction) {
+		reportedFraction = fraction;
+		op.fireProgressChanged(fraction);
+	}
+}
@@ -9,10 +9,14 @@ package com.mortennobel.imagescaling;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -20,7 +24,13 @@ import java.util.concurrent.atomic.AtomicInteger;
 /**
  * Based on work from Java Image Util ( http://schmidt.devlib.org/jiu/ )
  *
- * Note that the filter method is not thread safe
+ * The filter method is thread safe: all state of an invocation is kept in a {@link ResampleContext}, so a
+ * configured instance may be shared and used by many threads at the same time. Changing the configuration while
+ * the op is in use only affects invocations started afterwards.
+ *
+ * When the executor service is a {@link ForkJoinPool} the passes are split recursively in small row ranges which idle
+ * workers steal, instead of one fixed part per thread. This balances the load when many images are resized at the
+ * same time on a shared pool.
  *
  * @author Morten Nobel-Joergensen
  * @author Heinz Doerr
@@ -29,23 +39,186 @@ public class ResampleOp extends AdvancedResizeOp
 {
 	private final int MAX_CHANNEL_VALUE= 255;
 
-	private int nrChannels;
-	private int srcWidth;
-	private int srcHeight;
-	private int dstWidth;
-	private int dstHeight;
+	/**
+	 * Number of fractional bits used by the fixed point weights. 14 bits leaves enough head room to accumulate
+	 * the contributions of even very wide (negative lobed) kernels in an int without overflow.
+	 */
+	static final int FIXED_POINT_BITS = 14;
+	static final int FIXED_POINT_ONE = 1 << FIXED_POINT_BITS;
+	private static final int FIXED_POINT_ROUNDING = 1 << (FIXED_POINT_BITS - 1);
+
+	/**
+	 * Number of samples of a destination row the vertical pass accumulates at a time when using
+	 * {@link Partitioning#Contiguous}. The accumulator (8 KB) and the corresponding part of the work rows stay in the
+	 * L1 cache.
+	 */
+	static final int COLUMN_TILE_SIZE = 2048;
+
+	/**
+	 * With pre-reduction the source is reduced to at least this factor times the destination size, so the filter
+	 * still has enough samples.
+	 */
+	static final int PRE_REDUCTION_MARGIN = 2;
+
+	/**
+	 * How the rows of each pass are distributed between the threads.
+	 */
+	public static enum Partitioning{
+		/**
+		 * Thread i processes row i, i+n, i+2n, ... where n is the number of threads. Neighbouring rows are processed
+		 * by different threads, which may share cache lines at the row boundaries.
+		 */
+		Interleaved,
+		/**
+		 * Each thread processes one contiguous block of rows, and the vertical pass works on column tiles of
+		 * {@value #COLUMN_TILE_SIZE} samples. Threads only meet at the block boundaries.
+		 */
+		Contiguous
+	}
+
+	/**
+	 * The number of row ranges per worker of a {@link ForkJoinPool} a pass is split in, more ranges gives a better
+	 * balance at the price of more tasks.
+	 */
+	private static final int FORK_JOIN_RANGES_PER_WORKER = 4;
+	private static final int FORK_JOIN_MIN_ROWS = 4;
+
+	/**
+	 * The accumulator rows of the vertical pass. They are kept per thread, since some operations do the vertical pass
+	 * a single row at a time.
+	 */
+	private static final ThreadLocal<float[]> FLOAT_ACCUMULATOR = new ThreadLocal<>();
+	private static final ThreadLocal<int[]> INT_ACCUMULATOR = new ThreadLocal<>();
+
+	/**
+	 * The longest accumulator kept per thread (64 KB). With interleaved partitioning the accumulator is a whole
+	 * destination row; longer ones are allocated for each range instead, so the threads of a shared executor do not
+	 * keep the longest row they have seen for their lifetime.
+	 */
+	static final int MAX_THREAD_ACCUMULATOR_LENGTH = 16 * 1024;
+
+	/**
+	 * A part of a pass: the rows from, from+step, ... below to.
+	 */
+	interface RowRange {
+		void process(int from, int to, int step, boolean reportProgress);
+	}
+
+	/**
+	 * A pass run on a {@link ForkJoinPool}, processed at most grain rows at a time. Only the thread which started the
+	 * pass reports progress, and no more rows are started once the timeout has passed.
+	 */
+	private static final class ForkJoinPass {
+		private final RowRange rowRange;
+		private final int size;
+		private final int grain;
+		private final long timeout;
+		private final long deadline; // in System.nanoTime(), only used if timeout > 0
+		private final Thread reportingThread = Thread.currentThread();
+		private final AtomicInteger nextRow = new AtomicInteger(); // the first row no thread has claimed
+		private volatile boolean timedOut;
+
+		private ForkJoinPass(RowRange rowRange, int size, int grain, long timeout) {
+			this.rowRange = rowRange;
+			this.size = size;
+			this.grain = grain;
+			this.timeout = timeout;
+			this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		}
+
+		/**
+		 * Processes the rows from..to-1, unless the pass has timed out
+		 */
+		private void process(int from, int to) {
+			if (timeout > 0 && (timedOut || System.nanoTime() - deadline > 0)){
+				timedOut = true;
+				return;
+			}
+			rowRange.process(from, to, 1, Thread.currentThread() == reportingThread);
+		}
 
-	static class SubSamplingData{
-		private final int[] arrN; // individual - per row or per column - nr of contributions
-		private final int[] arrPixel;  // 2Dim: [wid or hei][contrib]
-		private final float[] arrWeight; // 2Dim: [wid or hei][contrib]
-		private final int numContributors; // the primary index length for the 2Dim arrays : arrPixel and arrWeight
+		/**
+		 * Processes ranges of grain rows until all rows have been claimed by this or the other threads
+		 */
+		private void processClaimed() {
+			for (int from = nextRow.getAndAdd(grain); from < size && !timedOut; from = nextRow.getAndAdd(grain)) {
+				process(from, Math.min(size, from + grain));
+			}
+		}
+	}
 
-		private SubSamplingData(int[] arrN, int[] arrPixel, float[] arrWeight, int numContributors) {
+	/**
+	 * Processes the rows from..to-1 of a pass by splitting them in halves until at most grain rows are left.
+	 */
+	private static final class RowRangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final ForkJoinPass pass;
+		private final int from;
+		private final int to;
+
+		private RowRangeTask(ForkJoinPass pass, int from, int to) {
+			this.pass = pass;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= pass.grain){
+				pass.process(from, to);
+				return;
+			}
+			final int middle = (from + to) >>> 1;
+			invokeAll(new RowRangeTask(pass, from, middle), new RowRangeTask(pass, middle, to));
+		}
+	}
+
+	/**
+	 * The contributors and weights used to resample one dimension of an image. Instances are immutable and may be
+	 * shared between threads, see {@link SubSamplingCache}. The arrays are read directly by the ops of this package,
+	 * the getters return copies so a caller cannot change the weights of the cached entries.
+	 */
+	public static final class SubSamplingData{
+		final int[] arrN; // individual - per row or per column - nr of contributions
+		final int[] arrPixel;  // 2Dim: [wid or hei][contrib]
+		final float[] arrWeight; // 2Dim: [wid or hei][contrib]
+		final int[] arrWeightFixed; // arrWeight quantized to FIXED_POINT_BITS, each row sums to FIXED_POINT_ONE
+		final int numContributors; // the primary index length for the 2Dim arrays : arrPixel and arrWeight
+		final float width; // the radius of the filter measured in source pixels
+
+		private SubSamplingData(int[] arrN, int[] arrPixel, float[] arrWeight, int numContributors, float width) {
 			this.arrN = arrN;
 			this.arrPixel = arrPixel;
 			this.arrWeight = arrWeight;
 			this.numContributors = numContributors;
+			this.width = width;
+			this.arrWeightFixed = quantizeWeights(arrN, arrWeight, numContributors);
+		}
+
+		/**
+		 * Rounds the normalized weights to fixed point. The rounding error of each row is added to its largest
+		 * weight, so that a flat area stays exactly flat after resampling.
+		 */
+		private static int[] quantizeWeights(int[] arrN, float[] arrWeight, int numContributors) {
+			int[] arrWeightFixed = new int[arrWeight.length];
+			for (int i = 0; i < arrN.length; i++) {
+				final int subindex = i * numContributors;
+				final int max = arrN[i];
+				int sum = 0;
+				int largest = subindex;
+				for (int k = subindex; k < subindex + max; k++) {
+					arrWeightFixed[k] = Math.round(arrWeight[k] * FIXED_POINT_ONE);
+					sum += arrWeightFixed[k];
+					if (Math.abs(arrWeight[k]) > Math.abs(arrWeight[largest])) {
+						largest = k;
+					}
+				}
+				if (max > 0) {
+					arrWeightFixed[largest] += FIXED_POINT_ONE - sum;
+				}
+			}
+			return arrWeightFixed;
 		}
 
 
@@ -54,29 +227,34 @@ public class ResampleOp extends AdvancedResizeOp
 		}
 
 		public int[] getArrN() {
-			return arrN;
+			return arrN.clone();
 		}
 
 		public int[] getArrPixel() {
-			return arrPixel;
+			return arrPixel.clone();
 		}
 
 		public float[] getArrWeight() {
-			return arrWeight;
+			return arrWeight.clone();
 		}
-	}
 
-	private SubSamplingData horizontalSubsamplingData;
-	private SubSamplingData verticalSubsamplingData;
+		public int[] getArrWeightFixed() {
+			return arrWeightFixed.clone();
+		}
 
-	private int processedItems;
-	private float totalItems;
+		public float getWidth() {
+			return width;
+		}
+	}
 
 	private int numberOfThreads = Runtime.getRuntime().availableProcessors();
 	private long timeout = 0;
-	private boolean shutdownExecutor = true;
-
-	private AtomicInteger multipleInvocationLock = new AtomicInteger();
+	private boolean fixedPointArithmetic = false;
+	private boolean linearLight = false;
+	private boolean preReduction = false;
+	private Partitioning partitioning = Partitioning.Contiguous;
+	private SubSamplingCache subSamplingCache = SubSamplingCache.getDefault();
+	private BufferPool bufferPool = StripedBufferPool.getDefault();
 
 	private ResampleFilter filter = ResampleFilters.getLanczos3Filter();
 
@@ -91,12 +269,10 @@ public class ResampleOp extends AdvancedResizeOp
 
 	public ResampleOp(int destWidth, int destHeight, final ExecutorService executor) {
 		this(DimensionConstrain.createAbsolutionDimension(destWidth, destHeight), executor);
-		shutdownExecutor = false;
 	}
 
 	public ResampleOp(DimensionConstrain dimensionConstrain, final ExecutorService executor) {
 		super(dimensionConstrain, executor);
-		shutdownExecutor = false;
 	}
 
 	public ResampleFilter getFilter() {
@@ -115,6 +291,106 @@ public class ResampleOp extends AdvancedResizeOp
 		this.numberOfThreads = numberOfThreads;
 	}
 
+	@Override
+	String getFilterName() {
+		return filter.getName();
+	}
+
+	public boolean isFixedPointArithmetic() {
+		return fixedPointArithmetic;
+	}
+
+	/**
+	 * When enabled the convolution is done using integer weights with {@value #FIXED_POINT_BITS} fractional bits
+	 * instead of floats. This is noticeable faster, and the result of each pass differs from the floating point result
+	 * by at most one in each channel. When reducing this also holds for the resized image. When enlarging, a difference
+	 * of one in the horizontal pass can be amplified by the negative lobes of the vertical pass, so a few samples of
+	 * the resized image may differ by two.
+	 * @param fixedPointArithmetic true to use fixed point arithmetic
+	 */
+	public void setFixedPointArithmetic(boolean fixedPointArithmetic) {
+		this.fixedPointArithmetic = fixedPointArithmetic;
+	}
+
+	public boolean isLinearLight() {
+		return linearLight;
+	}
+
+	/**
+	 * Enables resampling in linear light. The color samples are converted from sRGB to linear light before they are
+	 * filtered and back afterwards, which keeps the brightness of fine detail such as thin lines and text; filtering
+	 * the sRGB values directly darkens it. The conversions are table lookups, see {@link LinearLight}.
+	 *
+	 * The horizontally scaled image is kept with 16 bits per sample, twice the memory of the default mode, and the
+	 * passes always use floating point arithmetic. Alpha is filtered as is, and gray images are treated as sRGB.
+	 */
+	public void setLinearLight(boolean linearLight) {
+		this.linearLight = linearLight;
+	}
+
+	public boolean isPreReduction() {
+		return preReduction;
+	}
+
+	/**
+	 * Enables reducing large sources with a box filter before the resampling filter is applied. When the source is
+	 * at least {@value #PRE_REDUCTION_MARGIN} times larger than the destination in a direction, it is first averaged
+	 * over blocks of an integral number of pixels, to between 2 and 3 times the destination size. The filter then only
+	 * has to cover the remaining reduction, so the number of source pixels contributing to a destination pixel no
+	 * longer grows with the scale, e.g. a 20 times reduction with Lanczos3 reads 12 instead of 120 pixels per
+	 * destination pixel in each pass.
+	 *
+	 * The result is slightly softer than filtering the source directly. Only {@link #filter} of this class uses the
+	 * pre-reduction, {@link StreamingResampleOp}, {@link TiledResampleOp} and {@link MultiResampleOp} do not.
+	 */
+	public void setPreReduction(boolean preReduction) {
+		this.preReduction = preReduction;
+	}
+
+	public Partitioning getPartitioning() {
+		return partitioning;
+	}
+
+	/**
+	 * @param partitioning how the rows are distributed between the threads, default is {@link Partitioning#Contiguous}.
+	 *                        The result is the same for all strategies.
+	 */
+	public void setPartitioning(Partitioning partitioning) {
+		if (partitioning == null){
+			throw new IllegalArgumentException("partitioning must not be null");
+		}
+		this.partitioning = partitioning;
+	}
+
+	public SubSamplingCache getSubSamplingCache() {
+		return subSamplingCache;
+	}
+
+	/**
+	 * @param subSamplingCache the cache used to lookup the sub sampling data. Use a cache of size 0 to disable caching.
+	 */
+	public void setSubSamplingCache(SubSamplingCache subSamplingCache) {
+		if (subSamplingCache == null){
+			throw new IllegalArgumentException("subSamplingCache must not be null");
+		}
+		this.subSamplingCache = subSamplingCache;
+	}
+
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * @param bufferPool the pool the work image and the destination pixels are borrowed from. Use a
+	 *                      {@link StripedBufferPool} of size 0 to disable pooling.
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		if (bufferPool == null){
+			throw new IllegalArgumentException("bufferPool must not be null");
+		}
+		this.bufferPool = bufferPool;
+	}
+
 	public long getTimeout() {
 		return timeout;
 	}
@@ -124,65 +400,205 @@ public class ResampleOp extends AdvancedResizeOp
 	}
 
 	public BufferedImage doFilter(BufferedImage srcImg, BufferedImage dest, int dstWidth, int dstHeight) {
-		this.dstWidth = dstWidth;
-		this.dstHeight = dstHeight;
-
-		if (dstWidth<3 || dstHeight<3){
-			throw new RuntimeException("Error doing rescale. Target size was "+dstWidth+"x"+dstHeight+" but must be at least 3x3.");
+		checkTargetSize(dstWidth, dstHeight);
+		final Object conversionEvent = ResizeEvents.beginPhase();
+		final long start = System.nanoTime();
+		srcImg = convertUnsupportedSource(srcImg);
+		ResizeMetrics.lap(ResizeMetrics.current(), ResizeMetrics.Phase.Conversion, start);
+		ResizeEvents.commitPhase(conversionEvent, ResizeMetrics.Phase.Conversion);
+		final int factorX = preReduction ? preReductionFactor(srcImg.getWidth(), dstWidth) : 1;
+		final int factorY = preReduction ? preReductionFactor(srcImg.getHeight(), dstHeight) : 1;
+		if (factorX > 1 || factorY > 1){
+			return doFilterPreReduced(srcImg, dest, dstWidth, dstHeight, factorX, factorY);
 		}
 
-		assert multipleInvocationLock.incrementAndGet()==1:"Multiple concurrent invocations detected";
+		final ResampleContext context = new ResampleContext(srcImg, dstWidth, dstHeight);
+		final int nrChannels = context.nrChannels;
 
-		if (srcImg.getType() == BufferedImage.TYPE_BYTE_BINARY ||
-				srcImg.getType() == BufferedImage.TYPE_BYTE_INDEXED ||
-				srcImg.getType() == BufferedImage.TYPE_CUSTOM)
-			srcImg = ImageUtils.convert(srcImg, srcImg.getColorModel().hasAlpha() ?
-					BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR);
+        final Object horizontalEvent = ResizeEvents.beginPhase();
+        final long horizontalStart = System.nanoTime();
+        final WorkRows workPixels = new WorkRows(context.bufferPool, context.workRowLength(), context.srcHeight);
 
-		this.nrChannels= ImageUtils.nrChannels(srcImg);
-		assert nrChannels > 0;
-		this.srcWidth = srcImg.getWidth();
-        this.srcHeight = srcImg.getHeight();
+        final BufferedImage scrImgCopy = srcImg;
+		processPartitioned(context, context.srcHeight, (from, to, step, reportProgress) ->
+				context.horizontallyFromSrcToWork(scrImgCopy, workPixels, from, to, step, reportProgress));
+		ResizeMetrics.lap(context.metrics, ResizeMetrics.Phase.Horizontal, horizontalStart);
+		ResizeEvents.commitPhase(horizontalEvent, ResizeMetrics.Phase.Horizontal);
+
+		final BufferedImage out = verticallyFromWorkToImage(context, workPixels, srcImg, dest,
+				getUnsharpenMask() != UnsharpenMask.None);
+		// only returned to the pool when all threads are done with it, not after a timeout or an error
+		workPixels.release(context.bufferPool);
+		return out;
+    }
 
-        byte[][] workPixels = new byte[srcHeight][dstWidth*nrChannels];
+	/**
+	 * @return the block size used to reduce srcSize pixels before resampling to dstSize, 1 if no reduction is needed
+	 */
+	static int preReductionFactor(int srcSize, int dstSize) {
+		return Math.max(1, srcSize / (dstSize * PRE_REDUCTION_MARGIN));
+	}
 
-        this.processedItems = 0;
-		this.totalItems = srcHeight + dstWidth;
+	/**
+	 * @return the shift of the destination pixels in reduced pixels, which moves them half a block minus half a source
+	 * pixel left
+	 */
+	private static float preReductionShift(int factor) {
+		return -(factor - 1) / (2f * factor);
+	}
 
-		// Pre-calculate  sub-sampling
-		horizontalSubsamplingData = createSubSampling(filter, srcWidth, dstWidth);
-		verticalSubsamplingData = createSubSampling(filter,srcHeight, dstHeight);
+	/**
+	 * Version of doFilter which reduces the source by the factors with a {@link BoxReduction} first. The reduced
+	 * pixels are kept in an array borrowed from the buffer pool, from which the horizontal pass reads.
+	 */
+	private BufferedImage doFilterPreReduced(BufferedImage srcImg, BufferedImage dest, int dstWidth, int dstHeight,
+											 int factorX, int factorY) {
+		final int nrChannels = ImageUtils.nrChannels(srcImg);
+		final BoxReduction reduction = new BoxReduction(srcImg, nrChannels, factorX, factorY, linearLight);
+		// a reduced pixel is centered in its block, the shift puts the destination pixels where they are when
+		// resampling the source directly, see createSubSampling
+		final ResampleContext context = new ResampleContext(nrChannels, reduction.width, reduction.height,
+				dstWidth, dstHeight, preReductionShift(factorX), preReductionShift(factorY));
+
+		Object event = ResizeEvents.beginPhase();
+		long time = System.nanoTime();
+		final byte[] reduced = context.bufferPool.borrow(reduction.width * reduction.height * nrChannels);
+		processPartitioned(context, reduction.height, (from, to, step, reportProgress) ->
+				reduction.reduceRows(reduced, from, to, step));
+		time = ResizeMetrics.lap(context.metrics, ResizeMetrics.Phase.PreReduction, time);
+		ResizeEvents.commitPhase(event, ResizeMetrics.Phase.PreReduction);
+
+		event = ResizeEvents.beginPhase();
+
+		final WorkRows workPixels = new WorkRows(context.bufferPool, context.workRowLength(), context.srcHeight);
+		processPartitioned(context, context.srcHeight, (from, to, step, reportProgress) ->
+				context.horizontallyFromPixelsToWork(reduced, workPixels, from, to, step, reportProgress));
+		context.bufferPool.release(reduced);
+		ResizeMetrics.lap(context.metrics, ResizeMetrics.Phase.Horizontal, time);
+		ResizeEvents.commitPhase(event, ResizeMetrics.Phase.Horizontal);
+
+		final BufferedImage out = verticallyFromWorkToImage(context, workPixels, srcImg, dest,
+				getUnsharpenMask() != UnsharpenMask.None);
+		workPixels.release(context.bufferPool);
+		return out;
+	}
 
+	/**
+	 * The unsharp mask is applied by {@link #doFilter}, to the destination pixels before they are stored in the image.
+	 */
+	@Override
+	boolean isSharpenedByDoFilter() {
+		return true;
+	}
 
-        final BufferedImage scrImgCopy = srcImg;
-        final byte[][] workPixelsCopy = workPixels;
-		final List<Future<?>> futures = new ArrayList<>();
-        for (int i=1;i<numberOfThreads;i++){
-            final int finalI = i;
-			futures.add(getExecutorService().submit(() -> horizontallyFromSrcToWork(scrImgCopy, workPixelsCopy, finalI, numberOfThreads)));
-        }
-        horizontallyFromSrcToWork(scrImgCopy, workPixelsCopy,0,numberOfThreads);
-		waitForFutures(futures);
-
-        byte[] outPixels = new byte[dstWidth*dstHeight*nrChannels];
+	/**
+	 * Does the vertical pass of the context, and stores the result in dest or in a new image if dest is null or has
+	 * another size.
+	 *
+	 * @param sharpen true to apply the unsharp mask to the result
+	 */
+	BufferedImage verticallyFromWorkToImage(final ResampleContext context, final WorkRows workPixels,
+											BufferedImage srcImg, BufferedImage dest, boolean sharpen) {
+		final int dstWidth = context.dstWidth;
+		final int dstHeight = context.dstHeight;
+		final int nrChannels = context.nrChannels;
+		final Object event = ResizeEvents.beginPhase();
+		long time = System.nanoTime();
+		final BufferedImage out = createDestination(srcImg, dest, dstWidth, dstHeight, nrChannels);
+		final DirectRaster directOut = DirectRaster.of(out);
+		if (directOut != null && !sharpen){
+			// the vertical pass writes directly into the raster of the destination
+			processPartitioned(context, dstHeight, (from, to, step, reportProgress) ->
+					context.verticalFromWorkToDst(workPixels, null, 0, directOut, from, to, step, reportProgress));
+			ResizeMetrics.lap(context.metrics, ResizeMetrics.Phase.Vertical, time);
+			ResizeEvents.commitPhase(event, ResizeMetrics.Phase.Vertical);
+			return out;
+		}
+
+        final byte[] outPixels = context.bufferPool.borrow(dstWidth*dstHeight*nrChannels);
         // --------------------------------------------------
 		// Apply filter to sample vertically from Work to Dst
 		// --------------------------------------------------
-		futures.clear();
-        final byte[] outPixelsCopy = outPixels;
-        for (int i=1;i<numberOfThreads;i++){
-            final int finalI = i;
-            futures.add(getExecutorService().submit(() -> verticalFromWorkToDst(workPixelsCopy, outPixelsCopy, finalI,numberOfThreads)));
-        }
-        verticalFromWorkToDst(workPixelsCopy, outPixelsCopy, 0,numberOfThreads);
-        waitForFutures(futures);
+		processPartitioned(context, dstHeight, (from, to, step, reportProgress) ->
+				context.verticalFromWorkToDst(workPixels, outPixels, 0, null, from, to, step, reportProgress));
+		ResizeMetrics.lap(context.metrics, ResizeMetrics.Phase.Vertical, time);
+		ResizeEvents.commitPhase(event, ResizeMetrics.Phase.Vertical);
+		if (sharpen){
+			sharpen(context, outPixels, out.isAlphaPremultiplied());
+		}
+
+		time = System.nanoTime();
+        ImageUtils.setBGRPixels(outPixels, out, directOut, 0, 0, dstWidth, dstHeight);
+		context.bufferPool.release(outPixels);
+		ResizeMetrics.lap(context.metrics, ResizeMetrics.Phase.Store, time);
+		return out;
+	}
 
-		if (shutdownExecutor) {
-			getExecutorService().shutdown();
+	static void checkTargetSize(int dstWidth, int dstHeight) {
+		if (dstWidth<3 || dstHeight<3){
+			throw new RuntimeException("Error doing rescale. Target size was "+dstWidth+"x"+dstHeight+" but must be at least 3x3.");
 		}
+	}
+
+	/**
+	 * @return the source image, converted to a type the resampling supports if needed
+	 */
+	static BufferedImage convertUnsupportedSource(BufferedImage srcImg) {
+		if (srcImg.getType() == BufferedImage.TYPE_BYTE_BINARY ||
+				srcImg.getType() == BufferedImage.TYPE_BYTE_INDEXED ||
+				srcImg.getType() == BufferedImage.TYPE_CUSTOM)
+			srcImg = ImageUtils.convert(srcImg, srcImg.getColorModel().hasAlpha() ?
+					BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR);
+		return srcImg;
+	}
+
+	/**
+	 * Applies the unsharp mask to the destination pixels of the context, with the blur and the sharpening passes
+	 * split between the threads of the context.
+	 */
+	void sharpen(ResampleContext context, byte[] outPixels, boolean premultiplied) {
+		final Object event = ResizeEvents.beginPhase();
+		final long start = System.nanoTime();
+		final UnsharpMask unsharpMask = createUnsharpMask(context.dstWidth, context.dstHeight, context.nrChannels,
+				premultiplied);
+		final byte[] blurred = context.bufferPool.borrow(context.dstWidth * context.dstHeight * context.nrChannels);
+		processPartitioned(context, context.dstHeight, (from, to, step, reportProgress) ->
+				unsharpMask.blurRows(outPixels, blurred, from, to, step));
+		processPartitioned(context, context.dstHeight, (from, to, step, reportProgress) ->
+				unsharpMask.sharpenRows(outPixels, blurred, from, to, step));
+		context.bufferPool.release(blurred);
+		ResizeMetrics.lap(context.metrics, ResizeMetrics.Phase.Sharpen, start);
+		ResizeEvents.commitPhase(event, ResizeMetrics.Phase.Sharpen);
+	}
+
+	@Override
+	void sharpen(byte[] pixels, int width, int height, int nrChannels, boolean premultiplied) {
+		// the rows of the mask are not counted, the progress of the resize is already reported
+		sharpen(new ResampleContext(nrChannels, width, height, width, height, 0f, 0f, null), pixels, premultiplied);
+	}
 
-        //noinspection UnusedAssignment
-        workPixels = null; // free memory
+	/**
+	 * Stores the resampled pixels of the context in dest, or in a new image if dest is null or has another size. The
+	 * unsharp mask is applied first. outPixels is returned to the buffer pool of the context.
+	 */
+	BufferedImage createResult(ResampleContext context, BufferedImage srcImg, BufferedImage dest, byte[] outPixels) {
+		final BufferedImage out = createDestination(srcImg, dest, context.dstWidth, context.dstHeight,
+				context.nrChannels);
+		if (getUnsharpenMask() != UnsharpenMask.None){
+			sharpen(context, outPixels, out.isAlphaPremultiplied());
+		}
+		final long start = System.nanoTime();
+        ImageUtils.setBGRPixels(outPixels, out, 0, 0, context.dstWidth, context.dstHeight);
+		context.bufferPool.release(outPixels);
+		ResizeMetrics.lap(context.metrics, ResizeMetrics.Phase.Store, start);
+		return out;
+	}
+
+	/**
+	 * @return dest, or a new image if dest is null or has another size
+	 */
+	BufferedImage createDestination(BufferedImage srcImg, BufferedImage dest, int dstWidth, int dstHeight,
+									int nrChannels) {
 		BufferedImage out;
 		if (dest!=null && dstWidth==dest.getWidth() && dstHeight==dest.getHeight()){
 			out = dest;
@@ -194,15 +610,85 @@ public class ResampleOp extends AdvancedResizeOp
 		}else{
 			out = new BufferedImage(dstWidth, dstHeight, getResultBufferedImageType(srcImg));
 		}
+		return out;
+	}
 
-        ImageUtils.setBGRPixels(outPixels, out, 0, 0, dstWidth, dstHeight);
+	void processPartitioned(ResampleContext context, int size, RowRange rowRange) {
+		processPartitioned(context, size, context.partitioning, FORK_JOIN_MIN_ROWS, rowRange);
+	}
 
-		assert multipleInvocationLock.decrementAndGet()==0:"Multiple concurrent invocations detected";
+	/**
+	 * Splits the rows 0..size-1 between the threads of the context according to the partitioning. The first part is
+	 * processed by the calling thread, which is also the only one reporting progress.
+	 *
+	 * @param minForkJoinRows the minimum number of rows in a range when running on a {@link ForkJoinPool}
+	 */
+	void processPartitioned(ResampleContext context, int size, Partitioning partitioning, int minForkJoinRows,
+							RowRange rowRange) {
+		final int numberOfThreads = context.numberOfThreads;
+		processPartitioned(numberOfThreads > 1 ? getExecutorService() : null, numberOfThreads, context.timeout,
+				partitioning, minForkJoinRows, size, rowRange);
+		// the other threads may have processed rows after the last report of the calling thread
+		context.flushProgress();
+	}
 
-		return out;
-    }
+	/**
+	 * Splits the rows 0..size-1 between numberOfThreads threads of the executor according to the partitioning, or
+	 * recursively when the executor is a {@link ForkJoinPool}. The first part is processed by the calling thread, which
+	 * is also the only one reporting progress. Used by the ops which are not resample ops too.
+	 *
+	 * @param executorService the executor running the other parts, may be null if numberOfThreads is 1
+	 * @param timeout the maximum number of milliseconds to wait for the other parts, 0 for no limit
+	 * @param minForkJoinRows the minimum number of rows in a range when running on a {@link ForkJoinPool}
+	 */
+	static void processPartitioned(ExecutorService executorService, int numberOfThreads, long timeout,
+								   Partitioning partitioning, int minForkJoinRows, int size, RowRange rowRange) {
+		if (executorService instanceof ForkJoinPool){
+			processForkJoin((ForkJoinPool) executorService, timeout, size, minForkJoinRows, rowRange);
+			return;
+		}
+		final boolean contiguous = partitioning == Partitioning.Contiguous;
+		final List<Future<?>> futures = new ArrayList<>();
+		for (int i=1;i<numberOfThreads;i++){
+			final int from = contiguous ? (int) ((long) size * i / numberOfThreads) : i;
+			final int to = contiguous ? (int) ((long) size * (i+1) / numberOfThreads) : size;
+			if (from >= to){
+				continue;
+			}
+			final int step = contiguous ? 1 : numberOfThreads;
+			futures.add(executorService.submit(() -> rowRange.process(from, to, step, false)));
+		}
+		rowRange.process(0, contiguous ? size / numberOfThreads : size, contiguous ? 1 : numberOfThreads, true);
+		waitForFutures(futures, timeout);
+	}
 
-	private void waitForFutures(final List<Future<?>> futures) {
+	/**
+	 * Fork/join version of processPartitioned. A worker of the pool splits the rows recursively, and takes part in the
+	 * pass by work stealing while it joins the parts. Other threads can not run the tasks of the pool, so they claim
+	 * ranges of rows together with the workers instead, until all rows are taken. The partitioning is not used.
+	 */
+	private static void processForkJoin(ForkJoinPool pool, long timeout, int size, int minRows, RowRange rowRange) {
+		final int grain = Math.max(minRows, size / (pool.getParallelism() * FORK_JOIN_RANGES_PER_WORKER));
+		final ForkJoinPass pass = new ForkJoinPass(rowRange, size, grain, timeout);
+		if (ForkJoinTask.getPool() == pool){
+			new RowRangeTask(pass, 0, size).invoke();
+		} else {
+			final int ranges = (size + grain - 1) / grain;
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int i = 1; i < Math.min(ranges, pool.getParallelism() + 1); i++) {
+				futures.add(pool.submit(pass::processClaimed));
+			}
+			pass.processClaimed();
+			// the workers only finish the range they have claimed, the timeout is checked before each range
+			waitForFutures(futures, 0);
+		}
+		if (pass.timedOut){
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Timeout (" + timeout + ")");
+		}
+	}
+
+	private static void waitForFutures(final List<Future<?>> futures, final long timeout) {
 		long maxTimeout = timeout;
 		boolean timeoutReached = false;
 		for (final Future<?> f : futures) {
@@ -214,11 +700,7 @@ public class ResampleOp extends AdvancedResizeOp
 						final long end = System.currentTimeMillis();
 						maxTimeout = maxTimeout - (end - start);
 					} catch (InterruptedException | ExecutionException | TimeoutException e) {
-						if (shutdownExecutor) {
-							getExecutorService().shutdownNow();
-						} else {
-							cancelAllFutures(futures);
-						}
+						cancelAllFutures(futures);
 						Thread.currentThread().interrupt();
 						throw new RuntimeException(e);
 					}
@@ -230,11 +712,7 @@ public class ResampleOp extends AdvancedResizeOp
 				try {
 					f.get();
 				} catch (InterruptedException | ExecutionException e) {
-					if (shutdownExecutor) {
-						getExecutorService().shutdownNow();
-					} else {
-						cancelAllFutures(futures);
-					}
+					cancelAllFutures(futures);
 					Thread.currentThread().interrupt();
 					throw new RuntimeException(e);
 				}
@@ -246,13 +724,25 @@ public class ResampleOp extends AdvancedResizeOp
 		}
 	}
 
-	private void cancelAllFutures(final List<Future<?>> futures) {
+	private static void cancelAllFutures(final List<Future<?>> futures) {
 		futures.stream()
 			   .filter(f -> !f.isDone())
 			   .forEach(f -> f.cancel(true));
 	}
 
     static SubSamplingData createSubSampling(ResampleFilter filter, int srcSize, int dstSize) {
+		return createSubSampling(filter, srcSize, dstSize, 0f);
+	}
+
+	/**
+	 * The center of destination pixel i is placed at source position (i+0.5)/scale, which is half a source pixel right
+	 * of the true center of the area it covers. When an image is resized again, this offset grows to half a pixel of
+	 * the intermediate image; a shift of -0.5 compensates for that, so the result is aligned like resizing the
+	 * original image directly.
+	 *
+	 * @param shift moves the centers of the destination pixels, measured in source pixels
+	 */
+	static SubSamplingData createSubSampling(ResampleFilter filter, int srcSize, int dstSize, float shift) {
 		float scale = (float)dstSize / (float)srcSize;
 		int[] arrN= new int[dstSize];
 		int numContributors;
@@ -260,11 +750,12 @@ public class ResampleOp extends AdvancedResizeOp
 		int[] arrPixel;
 
 		final float fwidth= filter.getSamplingRadius();
+		final float width;
 
-        float centerOffset = 0.5f/scale;
+        float centerOffset = 0.5f/scale + shift;
 
 		if (scale < 1.0f) {
-			final float width= fwidth / scale;
+			width= fwidth / scale;
 			numContributors= (int)(width * 2.0f + 2); // Heinz: added 1 to be save with the ceilling
 			arrWeight= new float[dstSize * numContributors];
 			arrPixel= new int[dstSize * numContributors];
@@ -314,6 +805,7 @@ public class ResampleOp extends AdvancedResizeOp
 			// super-sampling
 			// Scales from smaller to bigger height
 		{
+			width= fwidth;
 			numContributors= (int)(fwidth * 2.0f + 1);
 			arrWeight= new float[dstSize * numContributors];
 			arrPixel= new int[dstSize * numContributors];
@@ -356,196 +848,877 @@ public class ResampleOp extends AdvancedResizeOp
 				}
 			}
 		}
-		return new SubSamplingData(arrN, arrPixel, arrWeight, numContributors);
+		return new SubSamplingData(arrN, arrPixel, arrWeight, numContributors, width);
 	}
 
-    private void verticalFromWorkToDst(byte[][] workPixels, byte[] outPixels, int start, int delta) {
-		if (nrChannels==1){
-			verticalFromWorkToDstGray(workPixels, outPixels, start,numberOfThreads);
-			return;
+	/**
+	 * A row of the source image. Sample i of pixel x of the row is found at pixels[offset + x*nrChannels + i], and
+	 * belongs to band bands[i].
+	 *
+	 * Byte interleaved images are read directly from the array behind the image, where the samples are stored in
+	 * memory order (e.g. blue, green, red for TYPE_3BYTE_BGR); the passes keep the sample order in the inner loop, which
+	 * lets the JIT compiler combine the bounds checks, and store the result in band order. Int packed images are read
+	 * directly as well, pixel x is found at ints[offset + x] and sample i are the bits 8*i to 8*i+7 of it. Other images
+	 * are copied in band order a row at a time using {@link ImageUtils#getPixelsBGR}.
+	 *
+	 * The image may be a band of a larger source image, row y of the source is then row y-firstRow of the image. The
+	 * rows may also be read from an array of band ordered pixels instead of an image.
+	 */
+	static final class SourceRow {
+		private final BufferedImage srcImg;
+		private final int firstRow;
+		private final DirectRaster raster; // the direct access to srcImg if it has any, used to copy the rows otherwise
+		private final DirectRaster directRaster;
+		private final int[] tempPixels;
+		private final int rowLength; // the length of a row when reading from an array
+		final byte[] pixels;
+		final int[] ints;
+		int offset;
+		final int[] bands;
+
+		SourceRow(BufferedImage srcImg, int firstRow, int nrChannels) {
+			this.srcImg = srcImg;
+			this.firstRow = firstRow;
+			this.rowLength = 0;
+			bands = new int[nrChannels];
+			raster = DirectRaster.of(srcImg);
+			final int sampleSize = raster == null || raster.isByteData() ? 1 : 8;
+			if (raster != null && raster.getPixelStride() == (raster.isByteData() ? nrChannels : 1)
+					&& isPermutation(raster, nrChannels, sampleSize)){
+				directRaster = raster;
+				tempPixels = null;
+				pixels = raster.getBytes();
+				ints = raster.getInts();
+				for (int band = 0; band < nrChannels; band++) {
+					bands[raster.getBandOffset(band) / sampleSize] = band;
+				}
+			} else {
+				directRaster = null;
+				tempPixels = new int[srcImg.getWidth()]; // Used if we work on int based bitmaps
+				pixels = new byte[srcImg.getWidth()*nrChannels]; // create reusable row to minimize memory overhead
+				ints = null;
+				for (int band = 0; band < nrChannels; band++) {
+					bands[band] = band;
+				}
+			}
 		}
-		boolean useChannel3 = nrChannels>3;
-		for (int x = start; x < dstWidth; x+=delta)
-        {
-			final int xLocation = x*nrChannels;
-			for (int y = dstHeight-1; y >=0 ; y--)
-			{
-				final int yTimesNumContributors = y * verticalSubsamplingData.numContributors;
-				final int max= verticalSubsamplingData.arrN[y];
-				final int sampleLocation = (y*dstWidth+x)*nrChannels;
-
-
-				float sample0 = 0.0f;
-				float sample1 = 0.0f;
-				float sample2 = 0.0f;
-				float sample3 = 0.0f;
-				int index= yTimesNumContributors;
-				for (int j= max-1; j >=0 ; j--) {
-					int valueLocation = verticalSubsamplingData.arrPixel[index];
-					float arrWeight = verticalSubsamplingData.arrWeight[index];
-					sample0+= (workPixels[valueLocation][xLocation]&0xff) *arrWeight ;
-					sample1+= (workPixels[valueLocation][xLocation+1]&0xff) * arrWeight;
-					sample2+= (workPixels[valueLocation][xLocation+2]&0xff) * arrWeight;
-					if (useChannel3){
-						sample3+= (workPixels[valueLocation][xLocation+3]&0xff) * arrWeight;
-					}
 
-					index++;
-				}
+		/**
+		 * Reads the rows of pixels, which holds rows of width pixels in band order.
+		 */
+		SourceRow(byte[] pixels, int width, int nrChannels) {
+			this.srcImg = null;
+			this.firstRow = 0;
+			this.raster = null;
+			this.directRaster = null;
+			this.tempPixels = null;
+			this.rowLength = width * nrChannels;
+			this.pixels = pixels;
+			this.ints = null;
+			bands = new int[nrChannels];
+			for (int band = 0; band < nrChannels; band++) {
+				bands[band] = band;
+			}
+		}
 
-				outPixels[sampleLocation] = toByte(sample0);
-				outPixels[sampleLocation +1] = toByte(sample1);
-				outPixels[sampleLocation +2] = toByte(sample2);
-				if (useChannel3){
-					outPixels[sampleLocation +3] = toByte(sample3);
+		private static boolean isPermutation(DirectRaster raster, int nrChannels, int sampleSize){
+			int found = 0;
+			for (int band = 0; band < nrChannels; band++) {
+				final int bandOffset = raster.getBandOffset(band);
+				if (bandOffset < 0 || bandOffset >= nrChannels * sampleSize || bandOffset % sampleSize != 0){
+					return false;
 				}
+				found |= 1 << (bandOffset / sampleSize);
+			}
+			return found == (1 << nrChannels) - 1;
+		}
 
+		boolean isPacked(){
+			return ints != null;
+		}
+
+		void read(int y){
+			y -= firstRow;
+			if (srcImg == null){
+				offset = y * rowLength;
+			} else if (directRaster != null){
+				offset = directRaster.getRowOffset(y);
+			} else {
+				ImageUtils.getPixelsBGR(srcImg, raster, y, srcImg.getWidth(), pixels, tempPixels);
 			}
-			processedItems++;
-			if (start==0){ // only update progress listener from main thread
-            	setProgress();
+		}
+	}
+
+	/**
+	 * @return the float accumulator of the current thread, with at least length elements, or a new array if length is
+	 * above {@link #MAX_THREAD_ACCUMULATOR_LENGTH}
+	 */
+	static float[] floatAccumulator(int length) {
+		if (length > MAX_THREAD_ACCUMULATOR_LENGTH){
+			return new float[length];
+		}
+		float[] accumulator = FLOAT_ACCUMULATOR.get();
+		if (accumulator == null || accumulator.length < length){
+			accumulator = new float[length];
+			FLOAT_ACCUMULATOR.set(accumulator);
+		}
+		return accumulator;
+	}
+
+	/**
+	 * @return the int accumulator of the current thread, with at least length elements, or a new array if length is
+	 * above {@link #MAX_THREAD_ACCUMULATOR_LENGTH}
+	 */
+	static int[] intAccumulator(int length) {
+		if (length > MAX_THREAD_ACCUMULATOR_LENGTH){
+			return new int[length];
+		}
+		int[] accumulator = INT_ACCUMULATOR.get();
+		if (accumulator == null || accumulator.length < length){
+			accumulator = new int[length];
+			INT_ACCUMULATOR.set(accumulator);
+		}
+		return accumulator;
+	}
+
+	private byte toByte(float f){
+		if (f<0){
+			return 0;
+		}
+		if (f>MAX_CHANNEL_VALUE){
+			return (byte) MAX_CHANNEL_VALUE;
+		}
+		return (byte)(f+0.5f); // add 0.5 same as Math.round
+	}
+
+	/**
+	 * @param fixedPoint a fixed point value where the rounding term has already been added
+	 */
+	private byte toByte(int fixedPoint){
+		final int value = fixedPoint >> FIXED_POINT_BITS;
+		if (value<0){
+			return 0;
+		}
+		if (value>MAX_CHANNEL_VALUE){
+			return (byte) MAX_CHANNEL_VALUE;
+		}
+		return (byte) value;
+	}
+
+	/**
+	 * The state of a single invocation of {@link #doFilter(BufferedImage, BufferedImage, int, int)}. The configuration
+	 * of the op is copied when the context is created.
+	 */
+	final class ResampleContext {
+		final int nrChannels;
+		final int srcWidth;
+		final int srcHeight;
+		final int dstWidth;
+		final int dstHeight;
+		private final int numberOfThreads;
+		private final long timeout;
+		private final boolean fixedPointArithmetic;
+		private final boolean linearLight;
+		private final Partitioning partitioning;
+		final BufferPool bufferPool;
+		final ResizeMetrics metrics; // null if the resize is not measured
+
+		final SubSamplingData horizontalSubsamplingData;
+		final SubSamplingData verticalSubsamplingData;
+
+		private final ProgressReporter progress; // null if the op has no progress listeners
+
+		ResampleContext(BufferedImage srcImg, int dstWidth, int dstHeight) {
+			this(ImageUtils.nrChannels(srcImg), srcImg.getWidth(), srcImg.getHeight(), dstWidth, dstHeight);
+		}
+
+		ResampleContext(int nrChannels, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+			this(nrChannels, srcWidth, srcHeight, dstWidth, dstHeight, 0f);
+		}
+
+		/**
+		 * @param shift moves the centers of the destination pixels, see {@link #createSubSampling(ResampleFilter, int, int, float)}
+		 */
+		ResampleContext(int nrChannels, int srcWidth, int srcHeight, int dstWidth, int dstHeight, float shift) {
+			this(nrChannels, srcWidth, srcHeight, dstWidth, dstHeight, shift, shift);
+		}
+
+		/**
+		 * Version with separate shifts of the columns and the rows
+		 */
+		ResampleContext(int nrChannels, int srcWidth, int srcHeight, int dstWidth, int dstHeight, float shiftX,
+						float shiftY) {
+			this(nrChannels, srcWidth, srcHeight, dstWidth, dstHeight, shiftX, shiftY,
+					hasProgressListeners() ? new ProgressReporter(ResampleOp.this, srcHeight + dstHeight) : null);
+		}
+
+		/**
+		 * Version which counts its rows in the given reporter, which may be shared with other contexts or null
+		 */
+		ResampleContext(int nrChannels, int srcWidth, int srcHeight, int dstWidth, int dstHeight, float shiftX,
+						float shiftY, ProgressReporter progress) {
+			this.nrChannels= nrChannels;
+			assert nrChannels > 0;
+			this.srcWidth = srcWidth;
+			this.srcHeight = srcHeight;
+			this.dstWidth = dstWidth;
+			this.dstHeight = dstHeight;
+			this.numberOfThreads = ResampleOp.this.numberOfThreads;
+			this.timeout = ResampleOp.this.timeout;
+			this.fixedPointArithmetic = ResampleOp.this.fixedPointArithmetic;
+			this.linearLight = ResampleOp.this.linearLight;
+			this.partitioning = ResampleOp.this.partitioning;
+			this.bufferPool = ResampleOp.this.bufferPool;
+			this.metrics = ResizeMetrics.current();
+			if (metrics != null){
+				metrics.setThreads(numberOfThreads);
 			}
-        }
-    }
 
-	private void verticalFromWorkToDstGray(byte[][] workPixels, byte[] outPixels, int start, int delta) {
-		for (int x = start; x < dstWidth; x+=delta)
-        {
-			final int xLocation = x;
-			for (int y = dstHeight-1; y >=0 ; y--)
+			this.progress = progress;
+
+			// Pre-calculate  sub-sampling
+			final long start = System.nanoTime();
+			final ResampleFilter filter = ResampleOp.this.filter;
+			horizontalSubsamplingData = subSamplingCache.get(filter, srcWidth, dstWidth, shiftX);
+			verticalSubsamplingData = subSamplingCache.get(filter, srcHeight, dstHeight, shiftY);
+			ResizeMetrics.lap(metrics, ResizeMetrics.Phase.SubSampling, start);
+		}
+
+		/**
+		 * @return the number of bytes of a horizontally scaled row, which has two bytes per sample in linear light
+		 */
+		int workRowLength() {
+			return dstWidth * nrChannels * (linearLight ? 2 : 1);
+		}
+
+		/**
+		* Apply filter to sample vertically from Work to Dst.
+		*
+		* The destination is processed a row at a time: each contributing work row is multiplied by its weight and added
+		* to an accumulator row. Since the inner loop runs over consecutive memory without any dependency on the number of
+		* channels, the JIT compiler is able to vectorize it (using SSE/AVX instructions on x86). With contiguous
+		* partitioning the row is split in column tiles, so the accumulator stays in the L1 cache.
+		*
+		* The result is stored in outPixels, or directly in the raster of the destination image if directOut is given.
+		* Either holds the destination rows from outFirstRow.
+		*
+		* In linear light the work rows hold 16 bit samples, which are converted back to sRGB after the tile is
+		* filtered.
+		*/
+		void verticalFromWorkToDst(WorkRows workPixels, byte[] outPixels, int outFirstRow, DirectRaster directOut,
+								   int from, int to, int step,
+										  boolean reportProgress) {
+			if (fixedPointArithmetic && !linearLight){
+				verticalFromWorkToDstFixed(workPixels, outPixels, outFirstRow, directOut, from, to, step, reportProgress);
+				return;
+			}
+			final int rowLength = dstWidth*nrChannels;
+			final int tileLength = columnTileLength(rowLength);
+			final float[] sample = floatAccumulator(tileLength);
+			final int[] outInts = directOut != null ? directOut.getInts() : null;
+			final byte[] outBytes = directOut != null ? directOut.getBytes() : null;
+			final int pixelStride = directOut != null ? directOut.getPixelStride() : 0;
+			// the bit offsets of the bands in an int raster, or their indices within a pixel in a byte raster
+			final int band0 = directOut != null ? directOut.getBandOffset(0) : 0;
+			final int band1 = directOut != null ? directOut.getBandOffset(Math.min(1, nrChannels-1)) : 0;
+			final int band2 = directOut != null ? directOut.getBandOffset(Math.min(2, nrChannels-1)) : 0;
+			final int band3 = directOut != null ? directOut.getBandOffset(nrChannels-1) : 0;
+			final boolean gray = nrChannels==1;
+			final boolean useChannel3 = nrChannels>3;
+			for (int y = from; y < to; y+=step)
 			{
-				final int yTimesNumContributors = y * verticalSubsamplingData.numContributors;
 				final int max= verticalSubsamplingData.arrN[y];
-				final int sampleLocation = (y*dstWidth+x);
+				final int firstIndex= y * verticalSubsamplingData.numContributors;
+				final int sampleLocation = (y-outFirstRow)*rowLength;
+
+				for (int tileStart = 0; tileStart < rowLength; tileStart += tileLength) {
+					final int length = Math.min(tileLength, rowLength - tileStart);
+					Arrays.fill(sample, 0, length, 0.0f);
+					int index = firstIndex;
+					for (int j= max-1; j >=0 ; j--) {
+						final int workRowIndex = verticalSubsamplingData.arrPixel[index];
+						final byte[] workRow = workPixels.array(workRowIndex);
+						final int workOffset = workPixels.offset(workRowIndex) + tileStart;
+						final float arrWeight = verticalSubsamplingData.arrWeight[index];
+						if (linearLight){
+							final int linearOffset = workPixels.offset(workRowIndex) + 2*tileStart;
+							for (int i = 0; i < length; i++) {
+								sample[i] += ((workRow[linearOffset+2*i]&0xff) | (workRow[linearOffset+2*i+1]&0xff) << 8)
+										* arrWeight;
+							}
+						} else {
+							for (int i = 0; i < length; i++) {
+								sample[i] += (workRow[workOffset+i]&0xff) * arrWeight;
+							}
+						}
+						index++;
+					}
+					if (linearLight){
+						toSRGB(sample, length);
+					}
 
+					if (outInts != null){
+						int outIndex = directOut.getRowOffset(y-outFirstRow) + tileStart/nrChannels;
+						for (int i = 0; i < length; i += nrChannels) {
+							int value = (toByte(sample[i])&0xff) << band0 | (toByte(sample[i+1])&0xff) << band1
+									| (toByte(sample[i+2])&0xff) << band2;
+							if (useChannel3){
+								value |= (toByte(sample[i+3])&0xff) << band3;
+							}
+							outInts[outIndex++] = value;
+						}
+					} else if (outBytes != null){
+						int outIndex = directOut.getRowOffset(y-outFirstRow) + tileStart/nrChannels*pixelStride;
+						for (int i = 0; i < length; i += nrChannels, outIndex += pixelStride) {
+							outBytes[outIndex+band0] = toByte(sample[i]);
+							if (gray){
+								continue;
+							}
+							outBytes[outIndex+band1] = toByte(sample[i+1]);
+							outBytes[outIndex+band2] = toByte(sample[i+2]);
+							if (useChannel3){
+								outBytes[outIndex+band3] = toByte(sample[i+3]);
+							}
+						}
+					} else {
+						for (int i = 0; i < length; i++) {
+							outPixels[sampleLocation+tileStart+i] = toByte(sample[i]);
+						}
+					}
+				}
+				itemProcessed(reportProgress);
+			}
+		}
 
-				float sample0 = 0.0f;
-				int index= yTimesNumContributors;
-				for (int j= max-1; j >=0 ; j--) {
-					int valueLocation = verticalSubsamplingData.arrPixel[index];
-					float arrWeight = verticalSubsamplingData.arrWeight[index];
-					sample0+= (workPixels[valueLocation][xLocation]&0xff) *arrWeight ;
+		/**
+		* Fixed point version of verticalFromWorkToDst
+		*/
+		private void verticalFromWorkToDstFixed(WorkRows workPixels, byte[] outPixels, int outFirstRow,
+												DirectRaster directOut,
+								   int from, int to, int step,
+										  boolean reportProgress) {
+			final int rowLength = dstWidth*nrChannels;
+			final int tileLength = columnTileLength(rowLength);
+			final int[] sample = intAccumulator(tileLength);
+			final int[] outInts = directOut != null ? directOut.getInts() : null;
+			final byte[] outBytes = directOut != null ? directOut.getBytes() : null;
+			final int pixelStride = directOut != null ? directOut.getPixelStride() : 0;
+			// the bit offsets of the bands in an int raster, or their indices within a pixel in a byte raster
+			final int band0 = directOut != null ? directOut.getBandOffset(0) : 0;
+			final int band1 = directOut != null ? directOut.getBandOffset(Math.min(1, nrChannels-1)) : 0;
+			final int band2 = directOut != null ? directOut.getBandOffset(Math.min(2, nrChannels-1)) : 0;
+			final int band3 = directOut != null ? directOut.getBandOffset(nrChannels-1) : 0;
+			final boolean gray = nrChannels==1;
+			final boolean useChannel3 = nrChannels>3;
+			for (int y = from; y < to; y+=step)
+			{
+				final int max= verticalSubsamplingData.arrN[y];
+				final int firstIndex= y * verticalSubsamplingData.numContributors;
+				final int sampleLocation = (y-outFirstRow)*rowLength;
+
+				for (int tileStart = 0; tileStart < rowLength; tileStart += tileLength) {
+					final int length = Math.min(tileLength, rowLength - tileStart);
+					Arrays.fill(sample, 0, length, FIXED_POINT_ROUNDING);
+					int index = firstIndex;
+					for (int j= max-1; j >=0 ; j--) {
+						final int workRowIndex = verticalSubsamplingData.arrPixel[index];
+						final byte[] workRow = workPixels.array(workRowIndex);
+						final int workOffset = workPixels.offset(workRowIndex) + tileStart;
+						final int arrWeight = verticalSubsamplingData.arrWeightFixed[index];
+						for (int i = 0; i < length; i++) {
+							sample[i] += (workRow[workOffset+i]&0xff) * arrWeight;
+						}
+						index++;
+					}
 
-					index++;
+					if (outInts != null){
+						int outIndex = directOut.getRowOffset(y-outFirstRow) + tileStart/nrChannels;
+						for (int i = 0; i < length; i += nrChannels) {
+							int value = (toByte(sample[i])&0xff) << band0 | (toByte(sample[i+1])&0xff) << band1
+									| (toByte(sample[i+2])&0xff) << band2;
+							if (useChannel3){
+								value |= (toByte(sample[i+3])&0xff) << band3;
+							}
+							outInts[outIndex++] = value;
+						}
+					} else if (outBytes != null){
+						int outIndex = directOut.getRowOffset(y-outFirstRow) + tileStart/nrChannels*pixelStride;
+						for (int i = 0; i < length; i += nrChannels, outIndex += pixelStride) {
+							outBytes[outIndex+band0] = toByte(sample[i]);
+							if (gray){
+								continue;
+							}
+							outBytes[outIndex+band1] = toByte(sample[i+1]);
+							outBytes[outIndex+band2] = toByte(sample[i+2]);
+							if (useChannel3){
+								outBytes[outIndex+band3] = toByte(sample[i+3]);
+							}
+						}
+					} else {
+						for (int i = 0; i < length; i++) {
+							outPixels[sampleLocation+tileStart+i] = toByte(sample[i]);
+						}
+					}
 				}
+				itemProcessed(reportProgress);
+			}
+		}
 
-				outPixels[sampleLocation] = toByte(sample0);
+		/**
+		* Apply filter to sample horizontally from Src to Work
+		* @param srcImg
+		* @param workPixels
+		*/
+		void horizontallyFromSrcToWork(BufferedImage srcImg, WorkRows workPixels, int from, int to, int step,
+											   boolean reportProgress) {
+			horizontallyFromSrcToWork(srcImg, 0, workPixels, from, to, step, reportProgress);
+		}
+
+		/**
+		* Version of horizontallyFromSrcToWork where srcImg is a band of the source image starting at srcFirstRow
+		*/
+		void horizontallyFromSrcToWork(BufferedImage srcImg, int srcFirstRow, WorkRows workPixels, int from, int to,
+									   int step, boolean reportProgress) {
+			horizontallyFromSrcToWork(new SourceRow(srcImg, srcFirstRow, nrChannels), workPixels, from, to, step,
+					reportProgress);
+		}
+
+		/**
+		* Version of horizontallyFromSrcToWork which reads the source from an array of band ordered pixels
+		*/
+		void horizontallyFromPixelsToWork(byte[] pixels, WorkRows workPixels, int from, int to, int step,
+										  boolean reportProgress) {
+			horizontallyFromSrcToWork(new SourceRow(pixels, srcWidth, nrChannels), workPixels, from, to, step,
+					reportProgress);
+		}
+
+		private void horizontallyFromSrcToWork(SourceRow srcRow, WorkRows workPixels, int from, int to, int step,
+											   boolean reportProgress) {
+			if (linearLight){
+				horizontallyFromSrcToWorkLinear(srcRow, workPixels, from, to, step, reportProgress);
+				return;
 			}
-			processedItems++;
-			if (start==0){ // only update progress listener from main thread
-            	setProgress();
+			if (srcRow.isPacked()){
+				if (fixedPointArithmetic){
+					horizontallyFromPackedSrcToWorkFixed(srcRow, workPixels, from, to, step, reportProgress);
+				} else {
+					horizontallyFromPackedSrcToWork(srcRow, workPixels, from, to, step, reportProgress);
+				}
+				return;
 			}
-        }
-    }
+			if (fixedPointArithmetic){
+				horizontallyFromSrcToWorkFixed(srcRow, workPixels, from, to, step, reportProgress);
+				return;
+			}
+			if (nrChannels==1){
+				horizontallyFromSrcToWorkGray(srcRow, workPixels, from, to, step, reportProgress);
+				return;
+			}
+			final int band0 = srcRow.bands[0];
+			final int band1 = srcRow.bands[1];
+			final int band2 = srcRow.bands[2];
+			final int band3 = srcRow.bands[nrChannels-1];
+			final boolean useChannel3 = nrChannels>3;
 
-	/**
-     * Apply filter to sample horizontally from Src to Work
-     * @param srcImg
-     * @param workPixels
-     */
-    private void horizontallyFromSrcToWork(BufferedImage srcImg, byte[][] workPixels, int start, int delta) {
-		if (nrChannels==1){
-			horizontallyFromSrcToWorkGray(srcImg, workPixels, start, delta);
-			return;
+
+			for (int k = from; k < to; k=k+step)
+			{
+				srcRow.read(k);
+				final byte[] srcPixels = srcRow.pixels;
+				final int rowOffset = srcRow.offset;
+				final byte[] workRow = workPixels.array(k);
+				final int workOffset = workPixels.offset(k);
+
+				for (int i = dstWidth-1;i>=0 ; i--)
+				{
+					int sampleLocation = i*nrChannels;
+					final int max = horizontalSubsamplingData.arrN[i];
+
+					float sample0 = 0.0f;
+					float sample1 = 0.0f;
+					float sample2 = 0.0f;
+					float sample3 = 0.0f;
+					int index= i * horizontalSubsamplingData.numContributors;
+					for (int j= max-1; j >= 0; j--) {
+						float arrWeight = horizontalSubsamplingData.arrWeight[index];
+						int pixelIndex = rowOffset + horizontalSubsamplingData.arrPixel[index]*nrChannels;
+
+						sample0 += (srcPixels[pixelIndex]&0xff) * arrWeight;
+						sample1 += (srcPixels[pixelIndex+1]&0xff) * arrWeight;
+						sample2 += (srcPixels[pixelIndex+2]&0xff)  * arrWeight;
+						if (useChannel3){
+							sample3 += (srcPixels[pixelIndex+3]&0xff)  * arrWeight;
+						}
+						index++;
+					}
+
+					workRow[workOffset + sampleLocation +band0] = toByte(sample0);
+					workRow[workOffset + sampleLocation +band1] = toByte(sample1);
+					workRow[workOffset + sampleLocation +band2] = toByte(sample2);
+					if (useChannel3){
+						workRow[workOffset + sampleLocation +band3] = toByte(sample3);
+					}
+				}
+				itemProcessed(reportProgress);
+			}
 		}
-		final int[] tempPixels = new int[srcWidth];   // Used if we work on int based bitmaps, later used to keep channel values
-		final byte[] srcPixels = new byte[srcWidth*nrChannels]; // create reusable row to minimize memory overhead
-		final boolean useChannel3 = nrChannels>3;
 
+		/**
+		* Apply filter to sample horizontally from Src to Work
+		* @param srcImg
+		* @param workPixels
+		*/
+		private void horizontallyFromSrcToWorkGray(SourceRow srcRow, WorkRows workPixels, int from, int to, int step,
+											   boolean reportProgress) {
 
-		for (int k = start; k < srcHeight; k=k+delta)
-        {
-			ImageUtils.getPixelsBGR(srcImg, k, srcWidth, srcPixels, tempPixels);
+			for (int k = from; k < to; k=k+step)
+			{
+				srcRow.read(k);
+				final byte[] srcPixels = srcRow.pixels;
+				final int rowOffset = srcRow.offset;
+				final byte[] workRow = workPixels.array(k);
+				final int workOffset = workPixels.offset(k);
+
+				for (int i = dstWidth-1;i>=0 ; i--)
+				{
+					int sampleLocation = i;
+					final int max = horizontalSubsamplingData.arrN[i];
+
+					float sample0 = 0.0f;
+					int index= i * horizontalSubsamplingData.numContributors;
+					for (int j= max-1; j >= 0; j--) {
+						float arrWeight = horizontalSubsamplingData.arrWeight[index];
+						int pixelIndex = rowOffset + horizontalSubsamplingData.arrPixel[index];
+
+						sample0 += (srcPixels[pixelIndex]&0xff) * arrWeight;
+						index++;
+					}
 
-			for (int i = dstWidth-1;i>=0 ; i--)
+					workRow[workOffset + sampleLocation] = toByte(sample0);
+				}
+				itemProcessed(reportProgress);
+			}
+		}
+
+		/**
+		* Fixed point version of horizontallyFromSrcToWork
+		*/
+		private void horizontallyFromSrcToWorkFixed(SourceRow srcRow, WorkRows workPixels, int from, int to, int step,
+											   boolean reportProgress) {
+			final int band0 = srcRow.bands[0];
+			final int band1 = srcRow.bands[Math.min(1, nrChannels-1)];
+			final int band2 = srcRow.bands[Math.min(2, nrChannels-1)];
+			final int band3 = srcRow.bands[nrChannels-1];
+			final boolean gray = nrChannels==1;
+			final boolean useChannel3 = nrChannels>3;
+			final int[] arrPixel = horizontalSubsamplingData.arrPixel;
+			final int[] arrWeight = horizontalSubsamplingData.arrWeightFixed;
+
+			for (int k = from; k < to; k=k+step)
 			{
-				int sampleLocation = i*nrChannels;
-				final int max = horizontalSubsamplingData.arrN[i];
-
-				float sample0 = 0.0f;
-				float sample1 = 0.0f;
-				float sample2 = 0.0f;
-				float sample3 = 0.0f;
-				int index= i * horizontalSubsamplingData.numContributors;
-				for (int j= max-1; j >= 0; j--) {
-					float arrWeight = horizontalSubsamplingData.arrWeight[index];
-					int pixelIndex = horizontalSubsamplingData.arrPixel[index]*nrChannels;
-
-					sample0 += (srcPixels[pixelIndex]&0xff) * arrWeight;
-					sample1 += (srcPixels[pixelIndex+1]&0xff) * arrWeight;
-					sample2 += (srcPixels[pixelIndex+2]&0xff)  * arrWeight;
+				srcRow.read(k);
+				final byte[] srcPixels = srcRow.pixels;
+				final int rowOffset = srcRow.offset;
+				final byte[] workRow = workPixels.array(k);
+				final int workOffset = workPixels.offset(k);
+
+				for (int i = dstWidth-1;i>=0 ; i--)
+				{
+					final int sampleLocation = i*nrChannels;
+					final int max = horizontalSubsamplingData.arrN[i];
+					int index= i * horizontalSubsamplingData.numContributors;
+
+					if (gray){
+						int sample0 = FIXED_POINT_ROUNDING;
+						for (int j= max-1; j >= 0; j--) {
+							sample0 += (srcPixels[rowOffset + arrPixel[index]]&0xff) * arrWeight[index];
+							index++;
+						}
+						workRow[workOffset + sampleLocation] = toByte(sample0);
+						continue;
+					}
+
+					int sample0 = FIXED_POINT_ROUNDING;
+					int sample1 = FIXED_POINT_ROUNDING;
+					int sample2 = FIXED_POINT_ROUNDING;
+					int sample3 = FIXED_POINT_ROUNDING;
+					for (int j= max-1; j >= 0; j--) {
+						final int weight = arrWeight[index];
+						final int pixelIndex = rowOffset + arrPixel[index]*nrChannels;
+
+						sample0 += (srcPixels[pixelIndex]&0xff) * weight;
+						sample1 += (srcPixels[pixelIndex+1]&0xff) * weight;
+						sample2 += (srcPixels[pixelIndex+2]&0xff) * weight;
+						if (useChannel3){
+							sample3 += (srcPixels[pixelIndex+3]&0xff) * weight;
+						}
+						index++;
+					}
+
+					workRow[workOffset + sampleLocation +band0] = toByte(sample0);
+					workRow[workOffset + sampleLocation +band1] = toByte(sample1);
+					workRow[workOffset + sampleLocation +band2] = toByte(sample2);
 					if (useChannel3){
-						sample3 += (srcPixels[pixelIndex+3]&0xff)  * arrWeight;
+						workRow[workOffset + sampleLocation +band3] = toByte(sample3);
 					}
-					index++;
 				}
+				itemProcessed(reportProgress);
+			}
+		}
+
+		/**
+		* Linear light version of horizontallyFromSrcToWork for all source layouts. The samples are converted to linear
+		* light with {@link LinearLight#TO_LINEAR}, and the result is stored as 16 bit little endian samples.
+		*/
+		private void horizontallyFromSrcToWorkLinear(SourceRow srcRow, WorkRows workPixels, int from, int to, int step,
+													 boolean reportProgress) {
+			final int[] arrN = horizontalSubsamplingData.arrN;
+			final int[] arrPixel = horizontalSubsamplingData.arrPixel;
+			final float[] arrWeight = horizontalSubsamplingData.arrWeight;
+			final int numContributors = horizontalSubsamplingData.numContributors;
+			final boolean packed = srcRow.isPacked();
+			final boolean gray = nrChannels==1;
+			final boolean useChannel3 = nrChannels>3;
+			// the samples in memory order, with the table of the band they belong to
+			final int band0 = srcRow.bands[0];
+			final int band1 = srcRow.bands[Math.min(1, nrChannels-1)];
+			final int band2 = srcRow.bands[Math.min(2, nrChannels-1)];
+			final int band3 = srcRow.bands[nrChannels-1];
+			final float[] table0 = linearTable(band0);
+			final float[] table1 = linearTable(band1);
+			final float[] table2 = linearTable(band2);
+			final float[] table3 = linearTable(band3);
+
+			for (int k = from; k < to; k=k+step)
+			{
+				srcRow.read(k);
+				final byte[] srcPixels = srcRow.pixels;
+				final int[] srcInts = srcRow.ints;
+				final int rowOffset = srcRow.offset;
+				final byte[] workRow = workPixels.array(k);
+				final int workOffset = workPixels.offset(k);
+
+				for (int i = dstWidth-1;i>=0 ; i--)
+				{
+					final int sampleLocation = workOffset + 2*i*nrChannels;
+					final int max = arrN[i];
+
+					float sample0 = 0.0f;
+					float sample1 = 0.0f;
+					float sample2 = 0.0f;
+					float sample3 = 0.0f;
+					int index= i * numContributors;
+					for (int j= max-1; j >= 0; j--) {
+						final float weight = arrWeight[index];
+						if (packed){
+							final int pixel = srcInts[rowOffset + arrPixel[index]];
+							sample0 += table0[pixel&0xff] * weight;
+							sample1 += table1[(pixel>>8)&0xff] * weight;
+							sample2 += table2[(pixel>>16)&0xff] * weight;
+							if (useChannel3){
+								sample3 += table3[pixel>>>24] * weight;
+							}
+						} else {
+							final int pixelIndex = rowOffset + arrPixel[index]*nrChannels;
+							sample0 += table0[srcPixels[pixelIndex]&0xff] * weight;
+							if (!gray){
+								sample1 += table1[srcPixels[pixelIndex+1]&0xff] * weight;
+								sample2 += table2[srcPixels[pixelIndex+2]&0xff] * weight;
+								if (useChannel3){
+									sample3 += table3[srcPixels[pixelIndex+3]&0xff] * weight;
+								}
+							}
+						}
+						index++;
+					}
 
-				workPixels[k][sampleLocation] = toByte(sample0);
-				workPixels[k][sampleLocation +1] = toByte(sample1);
-				workPixels[k][sampleLocation +2] = toByte(sample2);
-				if (useChannel3){
-					workPixels[k][sampleLocation +3] = toByte(sample3);
+					storeLinear(workRow, sampleLocation + 2*band0, sample0);
+					if (gray){
+						continue;
+					}
+					storeLinear(workRow, sampleLocation + 2*band1, sample1);
+					storeLinear(workRow, sampleLocation + 2*band2, sample2);
+					if (useChannel3){
+						storeLinear(workRow, sampleLocation + 2*band3, sample3);
+					}
 				}
-			}
-			processedItems++;
-			if (start==0){ // only update progress listener from main thread
-				setProgress();
+				itemProcessed(reportProgress);
 			}
 		}
-    }
 
-	/**
-     * Apply filter to sample horizontally from Src to Work
-     * @param srcImg
-     * @param workPixels
-     */
-    private void horizontallyFromSrcToWorkGray(BufferedImage srcImg, byte[][] workPixels, int start, int delta) {
-		final int[] tempPixels = new int[srcWidth];   // Used if we work on int based bitmaps, later used to keep channel values
-		final byte[] srcPixels = new byte[srcWidth]; // create reusable row to minimize memory overhead
+		private float[] linearTable(int band) {
+			return band == 3 ? LinearLight.ALPHA_TO_LINEAR : LinearLight.TO_LINEAR;
+		}
 
-		for (int k = start; k < srcHeight; k=k+delta)
-        {
-			ImageUtils.getPixelsBGR(srcImg, k, srcWidth, srcPixels, tempPixels);
+		private void storeLinear(byte[] workRow, int index, float sample) {
+			final int value = LinearLight.clamp(sample);
+			workRow[index] = (byte) value;
+			workRow[index+1] = (byte) (value >> 8);
+		}
 
-			for (int i = dstWidth-1;i>=0 ; i--)
+		/**
+		* Version of horizontallyFromSrcToWork for int packed images, which extracts the samples of each contributing
+		* pixel with shifts
+		*/
+		private void horizontallyFromPackedSrcToWork(SourceRow srcRow, WorkRows workPixels, int from, int to, int step,
+													 boolean reportProgress) {
+			final int[] arrN = horizontalSubsamplingData.arrN;
+			final int[] arrPixel = horizontalSubsamplingData.arrPixel;
+			final float[] arrWeight = horizontalSubsamplingData.arrWeight;
+			final int numContributors = horizontalSubsamplingData.numContributors;
+			final int band0 = srcRow.bands[0];
+			final int band1 = srcRow.bands[1];
+			final int band2 = srcRow.bands[2];
+			final int band3 = srcRow.bands[nrChannels-1];
+			final boolean useChannel3 = nrChannels>3;
+			final int[] srcInts = srcRow.ints;
+
+			for (int k = from; k < to; k=k+step)
 			{
-				int sampleLocation = i;
-				final int max = horizontalSubsamplingData.arrN[i];
-
-				float sample0 = 0.0f;
-				int index= i * horizontalSubsamplingData.numContributors;
-				for (int j= max-1; j >= 0; j--) {
-					float arrWeight = horizontalSubsamplingData.arrWeight[index];
-					int pixelIndex = horizontalSubsamplingData.arrPixel[index];
+				srcRow.read(k);
+				final int rowOffset = srcRow.offset;
+				final byte[] workRow = workPixels.array(k);
+				final int workOffset = workPixels.offset(k);
+
+				for (int i = dstWidth-1;i>=0 ; i--)
+				{
+					final int sampleLocation = i*nrChannels;
+					final int max = arrN[i];
+
+					float sample0 = 0.0f;
+					float sample1 = 0.0f;
+					float sample2 = 0.0f;
+					float sample3 = 0.0f;
+					int index= i * numContributors;
+					for (int j= max-1; j >= 0; j--) {
+						final float weight = arrWeight[index];
+						final int pixel = srcInts[rowOffset + arrPixel[index]];
+
+						sample0 += (pixel&0xff) * weight;
+						sample1 += ((pixel>>8)&0xff) * weight;
+						sample2 += ((pixel>>16)&0xff) * weight;
+						if (useChannel3){
+							sample3 += (pixel>>>24) * weight;
+						}
+						index++;
+					}
 
-					sample0 += (srcPixels[pixelIndex]&0xff) * arrWeight;
-					index++;
+					workRow[workOffset + sampleLocation +band0] = toByte(sample0);
+					workRow[workOffset + sampleLocation +band1] = toByte(sample1);
+					workRow[workOffset + sampleLocation +band2] = toByte(sample2);
+					if (useChannel3){
+						workRow[workOffset + sampleLocation +band3] = toByte(sample3);
+					}
 				}
+				itemProcessed(reportProgress);
+			}
+		}
 
-				workPixels[k][sampleLocation] = toByte(sample0);
+		/**
+		* Fixed point version of horizontallyFromPackedSrcToWork
+		*/
+		private void horizontallyFromPackedSrcToWorkFixed(SourceRow srcRow, WorkRows workPixels, int from, int to,
+														  int step, boolean reportProgress) {
+			final int[] arrN = horizontalSubsamplingData.arrN;
+			final int[] arrPixel = horizontalSubsamplingData.arrPixel;
+			final int[] arrWeight = horizontalSubsamplingData.arrWeightFixed;
+			final int numContributors = horizontalSubsamplingData.numContributors;
+			final int band0 = srcRow.bands[0];
+			final int band1 = srcRow.bands[1];
+			final int band2 = srcRow.bands[2];
+			final int band3 = srcRow.bands[nrChannels-1];
+			final boolean useChannel3 = nrChannels>3;
+			final int[] srcInts = srcRow.ints;
+
+			for (int k = from; k < to; k=k+step)
+			{
+				srcRow.read(k);
+				final int rowOffset = srcRow.offset;
+				final byte[] workRow = workPixels.array(k);
+				final int workOffset = workPixels.offset(k);
+
+				for (int i = dstWidth-1;i>=0 ; i--)
+				{
+					final int sampleLocation = i*nrChannels;
+					final int max = arrN[i];
+
+					int sample0 = FIXED_POINT_ROUNDING;
+					int sample1 = FIXED_POINT_ROUNDING;
+					int sample2 = FIXED_POINT_ROUNDING;
+					int sample3 = FIXED_POINT_ROUNDING;
+					int index= i * numContributors;
+					for (int j= max-1; j >= 0; j--) {
+						final int weight = arrWeight[index];
+						final int pixel = srcInts[rowOffset + arrPixel[index]];
+
+						sample0 += (pixel&0xff) * weight;
+						sample1 += ((pixel>>8)&0xff) * weight;
+						sample2 += ((pixel>>16)&0xff) * weight;
+						if (useChannel3){
+							sample3 += (pixel>>>24) * weight;
+						}
+						index++;
+					}
+
+					workRow[workOffset + sampleLocation +band0] = toByte(sample0);
+					workRow[workOffset + sampleLocation +band1] = toByte(sample1);
+					workRow[workOffset + sampleLocation +band2] = toByte(sample2);
+					if (useChannel3){
+						workRow[workOffset + sampleLocation +band3] = toByte(sample3);
+					}
+				}
+				itemProcessed(reportProgress);
 			}
-			processedItems++;
-			if (start==0){ // only update progress listener from main thread
-				setProgress();
+		}
+
+		/**
+		 * Converts the linear light samples of a tile, which starts at a pixel, to sRGB in place
+		 */
+		private void toSRGB(float[] sample, int length) {
+			final boolean useChannel3 = nrChannels>3;
+			for (int i = 0; i < length; i++) {
+				sample[i] = useChannel3 && i % 4 == 3 ? LinearLight.toAlpha(sample[i]) : LinearLight.toSRGB(sample[i]);
 			}
 		}
-    }
 
-	private byte toByte(float f){
-		if (f<0){
-			return 0;
+		private int columnTileLength(int rowLength){
+			// whole pixels, so that a tile can be stored in an int packed image
+			return partitioning == Partitioning.Contiguous ?
+					Math.min(rowLength, COLUMN_TILE_SIZE / nrChannels * nrChannels) : rowLength;
 		}
-		if (f>MAX_CHANNEL_VALUE){
-			return (byte) MAX_CHANNEL_VALUE;
+
+		/**
+		 * Notifies the progress listeners of the rows processed by all threads, see {@link ProgressReporter#flush()}
+		 */
+		void flushProgress(){
+			if (progress != null){
+				progress.flush();
+			}
 		}
-		return (byte)(f+0.5f); // add 0.5 same as Math.round
-	}
 
-	private void setProgress(){
-        fireProgressChanged(processedItems/totalItems);
-    }
+		/**
+		 * Counts a processed row, and notifies the progress listeners if reportProgress is true
+		 */
+		private void itemProcessed(boolean reportProgress){
+			if (progress != null){
+				progress.itemProcessed(reportProgress);
+			}
+		}
+	}
 
+	/**
+	 * @return the type of the image created for the result: the type of int packed sources is kept, other sources
+	 * give a byte interleaved image with the same number of channels
+	 */
 	protected int getResultBufferedImageType(BufferedImage srcImg) {
+		switch (srcImg.getType()) {
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_INT_BGR:
+		case BufferedImage.TYPE_INT_ARGB:
+		case BufferedImage.TYPE_INT_ARGB_PRE:
+			return srcImg.getType();
+		}
+		final int nrChannels = ImageUtils.nrChannels(srcImg);
 		return nrChannels == 3 ? BufferedImage.TYPE_3BYTE_BGR :
 							(nrChannels == 4 ? BufferedImage.TYPE_4BYTE_ABGR :
 								(srcImg.getSampleModel().getDataType() == DataBuffer.TYPE_USHORT ?
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+/**
+ * Emits the JDK Flight Recorder events of the resizes: a com.mortennobel.imagescaling.Resize event for each resize
+ * of an op (see {@link AdvancedResizeOp#instrumented}), and a com.mortennobel.imagescaling.ResizePhase event for the
+ * format conversion, the pre-reduction, the horizontal and vertical passes and the unsharp mask. Both carry the source
+ * and destination sizes, the image type, the filter and the number of threads of the resize, so the cost of the
+ * resizes can be correlated with the GC and CPU samples of the same recording.
+ *
+ * The events are emitted by the thread that called the op, the work the op hands to its threads is part of the
+ * phase it belongs to. The events are defined in src/main/java11, which is compiled for Java 11 when the library is
+ * built on JDK 11 or later. On older JVMs, on builds without them or when no recording has the events enabled,
+ * begin returns null and nothing else is done.
+ */
+final class ResizeEvents {
+	/**
+	 * Implemented by FlightRecorderEvents, the events are passed around as Object so this package does not depend on
+	 * jdk.jfr.
+	 */
+	interface Recorder {
+		Object beginResize(AdvancedResizeOp op, int srcWidth, int srcHeight, String imageType, int dstWidth,
+						   int dstHeight);
+
+		void describe(AdvancedResizeOp op);
+
+		void commitResize(Object event);
+
+		Object beginPhase();
+
+		void commitPhase(Object event, ResizeMetrics.Phase phase);
+	}
+
+	private static final Recorder RECORDER = createRecorder();
+
+	private ResizeEvents() {
+	}
+
+	/**
+	 * @return the recorder of the events, or null if the events are not available
+	 */
+	private static Recorder createRecorder() {
+		try {
+			Class.forName("jdk.jfr.Event", false, ResizeEvents.class.getClassLoader());
+			return (Recorder) Class.forName("com.mortennobel.imagescaling.FlightRecorderEvents")
+					.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			// built without the events, a JVM older than Java 11 or without a flight recorder
+			return null;
+		}
+	}
+
+	/**
+	 * @return the started event of the resize, or null if it is not recorded
+	 */
+	static Object beginResize(AdvancedResizeOp op, int srcWidth, int srcHeight, String imageType, int dstWidth,
+							  int dstHeight) {
+		return RECORDER != null ? RECORDER.beginResize(op, srcWidth, srcHeight, imageType, dstWidth, dstHeight) : null;
+	}
+
+	/**
+	 * Records the filter and the number of threads of op, which does the resize the calling thread is recording.
+	 */
+	static void describe(AdvancedResizeOp op) {
+		if (RECORDER != null){
+			RECORDER.describe(op);
+		}
+	}
+
+	static void commitResize(Object event) {
+		if (event != null){
+			RECORDER.commitResize(event);
+		}
+	}
+
+	/**
+	 * @return the started event of a phase, or null if it is not recorded
+	 */
+	static Object beginPhase() {
+		return RECORDER != null ? RECORDER.beginPhase() : null;
+	}
+
+	static void commitPhase(Object event, ResizeMetrics.Phase phase) {
+		if (event != null){
+			RECORDER.commitPhase(event, phase);
+		}
+	}
+}
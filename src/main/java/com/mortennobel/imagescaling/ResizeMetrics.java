@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * The measurements of a single resize, passed to the {@link MetricsListener}s of the op when it is done.
+ *
+ * The phases are timed by the calling thread, so the time of a phase split between threads is the time until all
+ * threads have finished it. Which phases are measured depends on the op: {@link ResampleOp} measures all phases of
+ * its passes, its subclasses which interleave the passes only the filter weights, storing and the unsharp mask, and
+ * the other ops only the unsharp mask. The total time always covers the whole resize.
+ */
+public final class ResizeMetrics {
+	public static enum Phase{
+		/**
+		 * Converting a source type the op does not support
+		 */
+		Conversion,
+		/**
+		 * Computing or looking up the filter weights
+		 */
+		SubSampling,
+		/**
+		 * Reducing the source with a box filter, see {@link ResampleOp#setPreReduction(boolean)}
+		 */
+		PreReduction,
+		Horizontal,
+		/**
+		 * The vertical pass, including storing the result when it is written directly into the destination
+		 */
+		Vertical,
+		/**
+		 * Storing the result in the destination image
+		 */
+		Store,
+		Sharpen
+	}
+
+	private static final ThreadLocal<ResizeMetrics> CURRENT = new ThreadLocal<>();
+	private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = threadMXBean();
+
+	private final String operation;
+	private final int sourceWidth;
+	private final int sourceHeight;
+	private final int destinationWidth;
+	private final int destinationHeight;
+	private final int nrChannels;
+	private final long[] phaseNanos = new long[Phase.values().length];
+	private final long startNanos;
+	private final long startAllocatedBytes;
+	private int threads = 1;
+	private long totalNanos;
+	private long allocatedBytes = -1;
+
+	ResizeMetrics(String operation, int sourceWidth, int sourceHeight, int destinationWidth, int destinationHeight,
+				  int nrChannels) {
+		this.operation = operation;
+		this.sourceWidth = sourceWidth;
+		this.sourceHeight = sourceHeight;
+		this.destinationWidth = destinationWidth;
+		this.destinationHeight = destinationHeight;
+		this.nrChannels = nrChannels;
+		this.startAllocatedBytes = allocatedBytes();
+		this.startNanos = System.nanoTime();
+	}
+
+	private static com.sun.management.ThreadMXBean threadMXBean() {
+		try {
+			final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+			if (threadMXBean instanceof com.sun.management.ThreadMXBean){
+				final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+				if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()){
+					return bean;
+				}
+			}
+		} catch (LinkageError | SecurityException e) {
+			// not a HotSpot based JVM, the allocated bytes are not measured
+		}
+		return null;
+	}
+
+	private static long allocatedBytes() {
+		return THREAD_MX_BEAN == null ? -1 : THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @return the metrics of the resize running in the calling thread, or null if no metrics are collected
+	 */
+	static ResizeMetrics current() {
+		return CURRENT.get();
+	}
+
+	static void setCurrent(ResizeMetrics metrics) {
+		if (metrics == null){
+			CURRENT.remove();
+		} else {
+			CURRENT.set(metrics);
+		}
+	}
+
+	/**
+	 * Adds the time since start to the phase.
+	 *
+	 * @return the current time, the start of the next phase
+	 */
+	long lap(Phase phase, long start) {
+		final long now = System.nanoTime();
+		phaseNanos[phase.ordinal()] += now - start;
+		return now;
+	}
+
+	/**
+	 * Version of {@link #lap(Phase, long)} which does nothing but return the current time if metrics is null.
+	 */
+	static long lap(ResizeMetrics metrics, Phase phase, long start) {
+		return metrics != null ? metrics.lap(phase, start) : System.nanoTime();
+	}
+
+	void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	void finish() {
+		totalNanos = System.nanoTime() - startNanos;
+		if (startAllocatedBytes >= 0){
+			allocatedBytes = allocatedBytes() - startAllocatedBytes;
+		}
+	}
+
+	/**
+	 * @return the simple class name of the op
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	public int getSourceWidth() {
+		return sourceWidth;
+	}
+
+	public int getSourceHeight() {
+		return sourceHeight;
+	}
+
+	public int getDestinationWidth() {
+		return destinationWidth;
+	}
+
+	public int getDestinationHeight() {
+		return destinationHeight;
+	}
+
+	public long getSourcePixels() {
+		return (long) sourceWidth * sourceHeight;
+	}
+
+	public long getDestinationPixels() {
+		return (long) destinationWidth * destinationHeight;
+	}
+
+	public int getNrChannels() {
+		return nrChannels;
+	}
+
+	/**
+	 * @return the number of threads the op was configured to use
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return the nanoseconds spent in the phase, 0 if the op does not have or measure the phase
+	 */
+	public long getPhaseNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return the bytes allocated by the calling thread during the resize, or -1 if the JVM does not measure it.
+	 * Allocations by the other threads of the op are not included.
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(operation).append(' ').append(sourceWidth).append('x').append(sourceHeight).append(" -> ")
+				.append(destinationWidth).append('x').append(destinationHeight).append(", ").append(nrChannels)
+				.append(" channels, ").append(threads).append(" threads, ").append(totalNanos / 1000).append("us");
+		for (Phase phase : Phase.values()) {
+			if (phaseNanos[phase.ordinal()] > 0){
+				sb.append(", ").append(phase).append(' ').append(phaseNanos[phase.ordinal()] / 1000).append("us");
+			}
+		}
+		if (allocatedBytes >= 0){
+			sb.append(", ").append(allocatedBytes).append(" bytes allocated");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A {@link ResampleOp} that does not keep the whole horizontally scaled image in memory.
+ *
+ * {@link ResampleOp} first scales every source row horizontally into a srcHeight x dstWidth work image, and then scales
+ * the work image vertically. This op instead splits the destination in bands of rows which are processed in parallel.
+ * Each band has a ring window of horizontally scaled rows, just high enough to hold the source rows that a single
+ * destination row depends on. The rows are scaled horizontally when a destination row first needs them, and the slot
+ * is reused when the window moves on. The memory used for work rows is thereby reduced from srcHeight x dstWidth to
+ * (number of bands) x (window height) x dstWidth, which matters when resizing very large images.
+ *
+ * The rows at the border between two bands are scaled horizontally by both bands, so this op does slightly more work
+ * than {@link ResampleOp}. The result is the same. The filter method is thread safe.
+ *
+ * @see com.mortennobel.imagescaling.experimental.ResampleOpSingleThread
+ */
+public class StreamingResampleOp extends ResampleOp {
+
+	/**
+	 * The minimum height of a band, measured in source rows per window height. Lower values give smaller bands
+	 * which balance better, at the price of scaling the border rows more often.
+	 */
+	private static final int MIN_BAND_WINDOWS = 4;
+
+	public StreamingResampleOp(int destWidth, int destHeight) {
+		super(destWidth, destHeight);
+	}
+
+	public StreamingResampleOp(DimensionConstrain dimensionConstrain) {
+		super(dimensionConstrain);
+	}
+
+	public StreamingResampleOp(int destWidth, int destHeight, ExecutorService executor) {
+		super(destWidth, destHeight, executor);
+	}
+
+	public StreamingResampleOp(DimensionConstrain dimensionConstrain, ExecutorService executor) {
+		super(dimensionConstrain, executor);
+	}
+
+	@Override
+	public BufferedImage doFilter(BufferedImage srcImg, BufferedImage dest, int dstWidth, int dstHeight) {
+		checkTargetSize(dstWidth, dstHeight);
+		final BufferedImage source = convertUnsupportedSource(srcImg);
+
+		final ResampleContext context = new ResampleContext(source, dstWidth, dstHeight);
+		final int windowHeight = getWindowHeight(context.verticalSubsamplingData);
+		final int minBandHeight = Math.max(1,
+				(int) Math.ceil(MIN_BAND_WINDOWS * windowHeight * (double) dstHeight / context.srcHeight));
+
+		final BufferedImage out = createDestination(source, dest, dstWidth, dstHeight, context.nrChannels);
+		// written directly into the raster of the destination if possible, the unsharp mask needs the pixels first
+		final DirectRaster directOut = getUnsharpenMask() == UnsharpenMask.None ? DirectRaster.of(out) : null;
+		final byte[] outPixels = directOut == null ?
+				context.bufferPool.borrow(dstWidth*dstHeight*context.nrChannels) : null;
+		// bands are always contiguous, interleaved rows would each need a window of their own
+		processPartitioned(context, dstHeight, Partitioning.Contiguous, minBandHeight, (from, to, step, reportProgress) ->
+				processBand(context, source, outPixels, directOut, windowHeight, from, to, reportProgress));
+
+		return directOut != null ? out : createResult(context, source, out, outPixels);
+	}
+
+	/**
+	 * @return the maximum distance between the first and the last source row that a destination row depends on
+	 */
+	static int getWindowHeight(SubSamplingData subSamplingData) {
+		final int[] arrN = subSamplingData.arrN;
+		final int[] arrPixel = subSamplingData.arrPixel;
+		final int numContributors = subSamplingData.numContributors;
+		int windowHeight = 1;
+		for (int i = 0; i < arrN.length; i++) {
+			final int index = i * numContributors;
+			int first = Integer.MAX_VALUE;
+			int last = Integer.MIN_VALUE;
+			for (int j = index; j < index + arrN[i]; j++) {
+				first = Math.min(first, arrPixel[j]);
+				last = Math.max(last, arrPixel[j]);
+			}
+			windowHeight = Math.max(windowHeight, last - first + 1);
+		}
+		return windowHeight;
+	}
+
+	/**
+	 * Resamples the destination rows from..to-1.
+	 *
+	 * Source row n is kept in slot n % windowHeight of the window. workRows maps a source row to its slot, so the
+	 * ResampleOp passes can be used unchanged, and slotRows records which source row a slot currently holds.
+	 */
+	private void processBand(ResampleContext context, BufferedImage srcImg, byte[] outPixels, DirectRaster directOut,
+							 int windowHeight, int from, int to, boolean reportProgress) {
+		final int height = Math.min(windowHeight, context.srcHeight);
+		final WorkRows workRows = new WorkRows(context.bufferPool, context.workRowLength(), context.srcHeight, height);
+		final int[] slotRows = new int[height];
+		Arrays.fill(slotRows, -1);
+
+		final SubSamplingData verticalSubsamplingData = context.verticalSubsamplingData;
+		final int[] arrN = verticalSubsamplingData.arrN;
+		final int[] arrPixel = verticalSubsamplingData.arrPixel;
+		final int numContributors = verticalSubsamplingData.numContributors;
+
+		for (int y = from; y < to; y++) {
+			final int index = y * numContributors;
+			int first = Integer.MAX_VALUE;
+			int last = Integer.MIN_VALUE;
+			for (int j = index; j < index + arrN[y]; j++) {
+				first = Math.min(first, arrPixel[j]);
+				last = Math.max(last, arrPixel[j]);
+			}
+
+			// scale the missing rows horizontally, a run of consecutive rows at a time
+			int runStart = -1;
+			for (int row = first; row <= last + 1; row++) {
+				final boolean missing = row <= last && slotRows[row % height] != row;
+				if (missing) {
+					final int slot = row % height;
+					slotRows[slot] = row;
+					workRows.map(row, slot);
+					if (runStart < 0) {
+						runStart = row;
+					}
+				} else if (runStart >= 0) {
+					context.horizontallyFromSrcToWork(srcImg, workRows, runStart, row, 1, reportProgress);
+					runStart = -1;
+				}
+			}
+
+			context.verticalFromWorkToDst(workRows, outPixels, 0, directOut, y, y + 1, 1, reportProgress);
+		}
+		workRows.release(context.bufferPool);
+	}
+}
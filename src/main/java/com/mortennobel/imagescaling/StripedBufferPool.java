@@ -0,0 +1,171 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded {@link BufferPool} of byte arrays in size classes of powers of two, so an array can be reused for any
+ * request of more than half its length. Arrays whose size class is larger than the maximum number of bytes of the pool
+ * or than 1GB are never pooled, they are allocated with the requested length.
+ *
+ * The pool is split in stripes, one per available processor (rounded up to a power of two), and a thread uses the
+ * stripe of its id first. Threads resizing at the same time thereby rarely contend for a lock, while an array released
+ * by one thread can still be borrowed by another. The arrays kept by the pool never exceed the maximum number of bytes
+ * given; an array released to a full pool is left to the garbage collector.
+ */
+public final class StripedBufferPool implements BufferPool {
+	public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+	/**
+	 * Arrays below this size are not worth pooling, the smallest size class is this size.
+	 */
+	private static final int MIN_SIZE_CLASS = 12;
+	private static final int SIZE_CLASSES = 31 - MIN_SIZE_CLASS;
+
+	private static final StripedBufferPool DEFAULT = new StripedBufferPool(DEFAULT_MAX_BYTES);
+
+	private final long maxBytes;
+	private final Stripe[] stripes;
+	private final AtomicLong pooledBytes = new AtomicLong();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * @param maxBytes the maximum number of bytes kept by the pool. 0 disables pooling.
+	 */
+	public StripedBufferPool(final long maxBytes) {
+		if (maxBytes < 0){
+			throw new IllegalArgumentException("maxBytes must not be negative");
+		}
+		this.maxBytes = maxBytes;
+		final int processors = Runtime.getRuntime().availableProcessors();
+		stripes = new Stripe[Integer.highestOneBit(processors * 2 - 1)];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * @return the pool shared by all resample operations, unless another pool is set on the operation
+	 */
+	public static StripedBufferPool getDefault() {
+		return DEFAULT;
+	}
+
+	public byte[] borrow(int length) {
+		final int sizeClass = sizeClass(length);
+		if (maxBytes == 0){
+			return new byte[length];
+		}
+		if (sizeClass >= SIZE_CLASSES || 1L << (sizeClass + MIN_SIZE_CLASS) > maxBytes){
+			// the array could never be kept by the pool, so it is not rounded up to its size class
+			missCount.incrementAndGet();
+			return new byte[length];
+		}
+		final int first = stripeIndex();
+		for (int i = 0; i < stripes.length; i++) {
+			final byte[] buffer = stripes[(first + i) & (stripes.length - 1)].poll(sizeClass);
+			if (buffer != null){
+				pooledBytes.addAndGet(-buffer.length);
+				hitCount.incrementAndGet();
+				return buffer;
+			}
+		}
+		missCount.incrementAndGet();
+		return new byte[1 << (sizeClass + MIN_SIZE_CLASS)];
+	}
+
+	public void release(byte[] buffer) {
+		final int sizeClass = sizeClass(buffer.length);
+		if (sizeClass >= SIZE_CLASSES || buffer.length != 1 << (sizeClass + MIN_SIZE_CLASS)){
+			return; // not borrowed from a pool
+		}
+		if (pooledBytes.addAndGet(buffer.length) > maxBytes){
+			pooledBytes.addAndGet(-buffer.length);
+			return;
+		}
+		stripes[stripeIndex()].add(sizeClass, buffer);
+	}
+
+	/**
+	 * @return the index of the smallest size class holding length bytes, SIZE_CLASSES or more if it is too large
+	 */
+	private static int sizeClass(int length) {
+		if (length <= 1 << MIN_SIZE_CLASS){
+			return 0;
+		}
+		return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_SIZE_CLASS;
+	}
+
+	private int stripeIndex() {
+		return (int) Thread.currentThread().getId() & (stripes.length - 1);
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return the number of bytes in the arrays kept by the pool
+	 */
+	public long getPooledBytes() {
+		return pooledBytes.get();
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Removes all arrays from the pool. The hit and miss counters are not reset.
+	 */
+	public void clear() {
+		for (Stripe stripe : stripes) {
+			pooledBytes.addAndGet(-stripe.clear());
+		}
+	}
+
+	private static final class Stripe {
+		private final List<ArrayDeque<byte[]>> buffers = new ArrayList<>(SIZE_CLASSES);
+
+		private Stripe() {
+			for (int i = 0; i < SIZE_CLASSES; i++) {
+				buffers.add(new ArrayDeque<byte[]>());
+			}
+		}
+
+		private synchronized byte[] poll(int sizeClass) {
+			return buffers.get(sizeClass).poll();
+		}
+
+		private synchronized void add(int sizeClass, byte[] buffer) {
+			buffers.get(sizeClass).push(buffer);
+		}
+
+		/**
+		 * @return the number of bytes removed
+		 */
+		private synchronized long clear() {
+			long bytes = 0;
+			for (ArrayDeque<byte[]> deque : buffers) {
+				for (byte[] buffer : deque) {
+					bytes += buffer.length;
+				}
+				deque.clear();
+			}
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, least recently used cache of the sub sampling data (contributors and weights) used by the resample
+ * operations. Computing the weights requires evaluating the filter for every tap, so when many images are scaled
+ * between the same sizes the cache saves both the computation and the allocation.
+ *
+ * Entries are keyed on the identity of the filter together with the source and destination size (and the shift of
+ * the pixel centers used when cascading). The class is thread safe.
+ */
+public final class SubSamplingCache {
+	public static final int DEFAULT_MAX_ENTRIES = 32;
+
+	private static final SubSamplingCache DEFAULT = new SubSamplingCache(DEFAULT_MAX_ENTRIES);
+
+	private final int maxEntries;
+	private final Map<Key, ResampleOp.SubSamplingData> entries;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * @param maxEntries the maximum number of cached entries. 0 disables caching.
+	 */
+	public SubSamplingCache(final int maxEntries) {
+		if (maxEntries < 0){
+			throw new IllegalArgumentException("maxEntries must not be negative");
+		}
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<Key, ResampleOp.SubSamplingData>(16, 0.75f, true){
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, ResampleOp.SubSamplingData> eldest) {
+				return size() > SubSamplingCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return the cache shared by all resample operations, unless another cache is set on the operation
+	 */
+	public static SubSamplingCache getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns the sub sampling data used for scaling one dimension from srcSize to dstSize, computing it if not
+	 * cached already.
+	 */
+	public ResampleOp.SubSamplingData get(ResampleFilter filter, int srcSize, int dstSize) {
+		return get(filter, srcSize, dstSize, 0f);
+	}
+
+	/**
+	 * @param shift moves the centers of the destination pixels, measured in source pixels
+	 * @see ResampleOp#createSubSampling(ResampleFilter, int, int, float)
+	 */
+	ResampleOp.SubSamplingData get(ResampleFilter filter, int srcSize, int dstSize, float shift) {
+		final Key key = new Key(filter, srcSize, dstSize, shift);
+		ResampleOp.SubSamplingData data;
+		synchronized (entries){
+			data = entries.get(key);
+		}
+		if (data != null){
+			hitCount.incrementAndGet();
+			return data;
+		}
+		missCount.incrementAndGet();
+		// computed outside the lock; if two threads miss on the same key both compute it, and the first one is kept
+		data = ResampleOp.createSubSampling(filter, srcSize, dstSize, shift);
+		if (maxEntries == 0){
+			return data;
+		}
+		synchronized (entries){
+			ResampleOp.SubSamplingData existing = entries.get(key);
+			if (existing != null){
+				return existing;
+			}
+			entries.put(key, data);
+		}
+		return data;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public int size() {
+		synchronized (entries){
+			return entries.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Removes all entries. The hit and miss counters are not reset.
+	 */
+	public void clear() {
+		synchronized (entries){
+			entries.clear();
+		}
+	}
+
+	private static final class Key {
+		private final ResampleFilter filter;
+		private final int srcSize;
+		private final int dstSize;
+		private final int shiftBits;
+
+		private Key(ResampleFilter filter, int srcSize, int dstSize, float shift) {
+			this.filter = filter;
+			this.srcSize = srcSize;
+			this.dstSize = dstSize;
+			this.shiftBits = Float.floatToIntBits(shift);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)){
+				return false;
+			}
+			Key key = (Key) o;
+			return filter == key.filter && srcSize == key.srcSize && dstSize == key.dstSize
+					&& shiftBits == key.shiftBits;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((System.identityHashCode(filter) * 31 + srcSize) * 31 + dstSize) * 31 + shiftBits;
+		}
+	}
+}
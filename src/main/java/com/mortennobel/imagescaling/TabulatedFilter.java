@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+/**
+ * A {@link ResampleFilter} which looks up the values of another filter in a precomputed table, interpolating linearly
+ * between the entries. The table holds resolution samples per unit from -radius to radius, so the grid contains every
+ * multiple of 1/resolution and the knots of the piecewise polynomial filters are sampled exactly.
+ *
+ * For a filter with a continuous second derivative f'' the error is at most max|f''| / (8 * resolution^2). The filter
+ * should be continuous, a step like the one of the box filter is smeared over one table entry.
+ *
+ * @see ResampleFilters#tabulate(ResampleFilter, int)
+ */
+final class TabulatedFilter implements ResampleFilter {
+	private final ResampleFilter filter;
+	private final float radius;
+	private final float resolution;
+	private final float[] table;
+	private final int lastIndex;
+
+	TabulatedFilter(ResampleFilter filter, int resolution) {
+		if (resolution < 1) {
+			throw new IllegalArgumentException("Resolution must be positive, was " + resolution);
+		}
+		this.filter = filter;
+		this.radius = filter.getSamplingRadius();
+		this.resolution = resolution;
+		this.lastIndex = (int) Math.ceil(2 * radius * resolution);
+		this.table = new float[lastIndex + 1];
+		for (int i = 0; i <= lastIndex; i++) {
+			table[i] = filter.apply((float) (i / (double) resolution - radius));
+		}
+	}
+
+	public float getSamplingRadius() {
+		return radius;
+	}
+
+	public float apply(float value) {
+		final float position = (value + radius) * resolution;
+		if (!(position >= 0f) || position > lastIndex) { // also rejects NaN
+			return 0f;
+		}
+		final int index = (int) position;
+		if (index == lastIndex) {
+			return table[lastIndex];
+		}
+		final float low = table[index];
+		return low + (table[index + 1] - low) * (position - index);
+	}
+
+	/**
+	 * @return the filter which values are tabulated
+	 */
+	ResampleFilter getFilter() {
+		return filter;
+	}
+
+	public String getName() {
+		return filter.getName() + " (tabulated)";
+	}
+}
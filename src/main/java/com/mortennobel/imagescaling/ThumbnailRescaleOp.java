@@ -8,6 +8,7 @@ package com.mortennobel.imagescaling;
 
 
 import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
 
 /**
  * The idea of this class is to provide fast (and inaccurate) rescaling method
@@ -15,6 +16,9 @@ import java.awt.image.BufferedImage;
  *
  * Note that the algorithm assumes that the source image is significant larger
  * than the destination image
+ *
+ * The samples of the RGB types are read from and written to the arrays behind the images directly, other types go
+ * through {@link BufferedImage#getRGB(int, int)}. The destination rows are split between the threads of the executor.
  */
 public class ThumbnailRescaleOp extends AdvancedResizeOp {
 	public static enum Sampling {
@@ -47,7 +51,13 @@ public class ThumbnailRescaleOp extends AdvancedResizeOp {
 
 	}
 
+	/**
+	 * The minimum number of destination rows given to a thread.
+	 */
+	private static final int MIN_ROWS_PER_THREAD = 16;
+
 	private Sampling sampling = Sampling.S_8ROCKS;
+	private int numberOfThreads = Runtime.getRuntime().availableProcessors();
 
 	public ThumbnailRescaleOp(int destWidth, int destHeight) {
 		this(DimensionConstrain.createAbsolutionDimension(destWidth, destHeight));
@@ -57,6 +67,27 @@ public class ThumbnailRescaleOp extends AdvancedResizeOp {
 		super(dimensionConstrain);
 	}
 
+	public ThumbnailRescaleOp(int destWidth, int destHeight, final ExecutorService executor) {
+		this(DimensionConstrain.createAbsolutionDimension(destWidth, destHeight), executor);
+	}
+
+	public ThumbnailRescaleOp(DimensionConstrain dimensionConstrain, final ExecutorService executor) {
+		super(dimensionConstrain, executor);
+	}
+
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	@Override
+	String getFilterName() {
+		return sampling.name();
+	}
+
 	protected BufferedImage doFilter(BufferedImage src, BufferedImage dest, int dstWidth, int dstHeight) {
 		int numberOfChannels = ImageUtils.nrChannels(src);
 		BufferedImage out;
@@ -70,45 +101,168 @@ public class ThumbnailRescaleOp extends AdvancedResizeOp {
 		float scaleX = src.getWidth()/(float)dstWidth;
 		float scaleY = src.getHeight()/(float)dstHeight;
 
-		float[][] scaledSampling = new float[sampling.points.length][2];
-		for (int i=0;i<sampling.points.length;i++){
-			float[] point=sampling.points[i];
+		final float[][] points = sampling.points;
+		final DirectRaster directSrc = isSRGB(src) ? DirectRaster.of(src) : null;
+		final DirectRaster directOut = isSRGB(out) ? DirectRaster.of(out) : null;
+
+		// the sample positions are accumulated like the destination pixels are visited, so every row gets the same
+		// positions no matter which thread computes it
+		final int[] sampleX = new int[points.length * dstWidth];
+		final int[] sampleY = new int[points.length * dstHeight];
+		for (int i=0;i<points.length;i++){
+			float[] point=points[i];
 			final float ROUNDING_ERROR_MARGIN = 0.0001f;
-			scaledSampling[i][0] = point[0]*scaleX+ROUNDING_ERROR_MARGIN;
-			scaledSampling[i][1] = point[1]*scaleY+ROUNDING_ERROR_MARGIN;
-		}
-		int maxSrcX = src.getWidth()-1;
-		int maxSrcY = src.getHeight()-1;
-		float srcY = 0;
-		for (int dstY=0;dstY<dstHeight;dstY++,srcY+=scaleY){
+			float scaledX = point[0]*scaleX+ROUNDING_ERROR_MARGIN;
+			float scaledY = point[1]*scaleY+ROUNDING_ERROR_MARGIN;
 			float srcX = 0;
 			for (int dstX=0;dstX<dstWidth;dstX++,srcX+=scaleX){
+				int x = Math.max(0,Math.min((int) (srcX+scaledX), src.getWidth()-1));
+				sampleX[dstX * points.length + i] = directSrc != null ? x * directSrc.getPixelStride() : x;
+			}
+			float srcY = 0;
+			for (int dstY=0;dstY<dstHeight;dstY++,srcY+=scaleY){
+				int y = Math.max(0,Math.min((int) (srcY+scaledY), src.getHeight()-1));
+				sampleY[dstY * points.length + i] = directSrc != null ? directSrc.getRowOffset(y) : y;
+			}
+		}
+
+		final ResizeMetrics metrics = ResizeMetrics.current();
+		if (metrics != null){
+			metrics.setThreads(numberOfThreads);
+		}
+		// contiguous ranges of at least MIN_ROWS_PER_THREAD rows, the calling thread processes the first one
+		final int threads = Math.max(1, Math.min(numberOfThreads, dstHeight / MIN_ROWS_PER_THREAD));
+		ResampleOp.processPartitioned(threads > 1 ? getExecutorService() : null, threads, 0,
+				ResampleOp.Partitioning.Contiguous, MIN_ROWS_PER_THREAD, dstHeight, (from, to, step, reportProgress) -> {
+			final int[] row = new int[dstWidth];
+			for (int dstY=from;dstY<to;dstY+=step){
+				if (directSrc != null){
+					sampleRowDirect(directSrc, numberOfChannels, sampleX, sampleY, dstY, row);
+				} else {
+					sampleRow(src, sampleX, sampleY, dstY, row);
+				}
+				if (directOut != null){
+					writeRowDirect(directOut, ImageUtils.nrChannels(out), dstY, row);
+				} else {
+					out.setRGB(0, dstY, dstWidth, 1, row, 0, dstWidth);
+				}
+			}
+		});
+		return out;
+	}
+
+	/**
+	 * @return true if {@link BufferedImage#getRGB(int, int)} returns the samples of the image unchanged, which holds
+	 * for the non premultiplied RGB types
+	 */
+	private static boolean isSRGB(BufferedImage img) {
+		switch (img.getType()) {
+		case BufferedImage.TYPE_3BYTE_BGR:
+		case BufferedImage.TYPE_4BYTE_ABGR:
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_INT_BGR:
+		case BufferedImage.TYPE_INT_ARGB:
+			return true;
+		}
+		return false;
+	}
+
+	private void sampleRow(BufferedImage src, int[] sampleX, int[] sampleY, int dstY, int[] row) {
+		final int points = sampling.points.length;
+		for (int dstX=0;dstX<row.length;dstX++){
+			int r = 0, g = 0, b = 0, a = 0;
+			for (int i=0;i<points;i++){
+				int rgb = src.getRGB(sampleX[dstX * points + i], sampleY[dstY * points + i]);
+				b += rgb&0xff;
+				rgb = rgb>>>8;
+				g += rgb&0xff;
+				rgb = rgb>>>8;
+				r += rgb&0xff;
+				rgb = rgb>>>8;
+				a += rgb&0xff;
+			}
+			row[dstX] = toRGB(r, g, b, a);
+		}
+	}
+
+	/**
+	 * Reads the samples from the array of the raster, sampleX holds the offsets of the columns and sampleY the offsets
+	 * of the rows.
+	 */
+	private void sampleRowDirect(DirectRaster src, int nrChannels, int[] sampleX, int[] sampleY, int dstY, int[] row) {
+		final int points = sampling.points.length;
+		final int redOffset = src.getBandOffset(0);
+		final int greenOffset = src.getBandOffset(1);
+		final int blueOffset = src.getBandOffset(2);
+		final boolean alpha = nrChannels == 4;
+		final int alphaOffset = alpha ? src.getBandOffset(3) : 0;
+		final int rowIndex = dstY * points;
+		if (src.isByteData()){
+			final byte[] bytes = src.getBytes();
+			for (int dstX=0;dstX<row.length;dstX++){
+				int r = 0, g = 0, b = 0, a = 0;
+				for (int i=0, x=dstX * points;i<points;i++,x++){
+					final int index = sampleY[rowIndex + i] + sampleX[x];
+					r += bytes[index + redOffset]&0xff;
+					g += bytes[index + greenOffset]&0xff;
+					b += bytes[index + blueOffset]&0xff;
+					a += alpha ? bytes[index + alphaOffset]&0xff : 0xff;
+				}
+				row[dstX] = toRGB(r, g, b, a);
+			}
+		} else {
+			final int[] ints = src.getInts();
+			for (int dstX=0;dstX<row.length;dstX++){
 				int r = 0, g = 0, b = 0, a = 0;
-				for (float[] point:scaledSampling){
-					int x = (int) (srcX+point[0]);
-					int y = (int) (srcY+point[1]);
-					x = Math.max(0,Math.min(x, maxSrcX));
-					y = Math.max(0,Math.min(y, maxSrcY));
-
-					int rgb = src.getRGB(x,y);
-					b += rgb&0xff;
-					rgb = rgb>>>8;
-					g += rgb&0xff;
-					rgb = rgb>>>8;
-					r += rgb&0xff;
-					rgb = rgb>>>8;
-					a += rgb&0xff;
+				for (int i=0, x=dstX * points;i<points;i++,x++){
+					final int value = ints[sampleY[rowIndex + i] + sampleX[x]];
+					r += (value>>>redOffset)&0xff;
+					g += (value>>>greenOffset)&0xff;
+					b += (value>>>blueOffset)&0xff;
+					a += alpha ? (value>>>alphaOffset)&0xff : 0xff;
 				}
-				r = r>>sampling.rightshift;
-				g = g>>sampling.rightshift;
-				b = b>>sampling.rightshift;
-				a = a>>sampling.rightshift;
+				row[dstX] = toRGB(r, g, b, a);
+			}
+		}
+	}
 
-				int rgb = (a<<24)+(r<<16)+(g<<8)+b;
-				out.setRGB(dstX, dstY, rgb);
+	private int toRGB(int r, int g, int b, int a) {
+		r = r>>sampling.rightshift;
+		g = g>>sampling.rightshift;
+		b = b>>sampling.rightshift;
+		a = a>>sampling.rightshift;
+		return (a<<24)+(r<<16)+(g<<8)+b;
+	}
+
+	private static void writeRowDirect(DirectRaster out, int nrChannels, int y, int[] row) {
+		final int redOffset = out.getBandOffset(0);
+		final int greenOffset = out.getBandOffset(1);
+		final int blueOffset = out.getBandOffset(2);
+		final boolean alpha = nrChannels == 4;
+		final int alphaOffset = alpha ? out.getBandOffset(3) : 0;
+		int index = out.getRowOffset(y);
+		if (out.isByteData()){
+			final byte[] bytes = out.getBytes();
+			final int pixelStride = out.getPixelStride();
+			for (int rgb : row) {
+				bytes[index + redOffset] = (byte) (rgb>>>16);
+				bytes[index + greenOffset] = (byte) (rgb>>>8);
+				bytes[index + blueOffset] = (byte) rgb;
+				if (alpha){
+					bytes[index + alphaOffset] = (byte) (rgb>>>24);
+				}
+				index += pixelStride;
+			}
+		} else {
+			final int[] ints = out.getInts();
+			for (int rgb : row) {
+				int value = ((rgb>>>16)&0xff)<<redOffset | ((rgb>>>8)&0xff)<<greenOffset | (rgb&0xff)<<blueOffset;
+				if (alpha){
+					value |= (rgb>>>24)<<alphaOffset;
+				}
+				ints[index++] = value;
 			}
 		}
-		return out;
 	}
 
 	public void setSampling(Sampling sampling) {
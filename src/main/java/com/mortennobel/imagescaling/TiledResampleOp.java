@@ -0,0 +1,347 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A {@link ResampleOp} that resizes images which are too large to be decoded as a whole, such as gigapixel TIFF or
+ * PNG scans.
+ *
+ * The source is decoded in bands of rows using {@link ImageReadParam#setSourceRegion}, combined with the source
+ * subsampling of {@link ImageUtils#readSubsampled}. Each band is scaled horizontally, and the destination rows which
+ * have all their source rows are scaled vertically and passed to a {@link RowSink} right away. Only the current band,
+ * the horizontally scaled rows still needed and the rows being emitted are kept in memory, so the memory used is
+ * independent of the height of the source. The result is the same as decoding the image and using {@link ResampleOp}.
+ *
+ * Formats that can not seek to a row, like PNG, decode the rows above a region again for every band. Use a large band
+ * height for those, see {@link #setBandHeight(int)}.
+ */
+public class TiledResampleOp extends ResampleOp {
+
+	/**
+	 * Receives the destination image a band of rows at a time, from the top.
+	 */
+	public interface RowSink {
+		/**
+		 * Called before the first rows.
+		 * @param type the type of the images passed to {@link #writeRows}
+		 */
+		void begin(int width, int height, ImageTypeSpecifier type) throws IOException;
+
+		/**
+		 * @param rows the destination rows from y, the image is only valid during the call
+		 * @param y the index of the first row
+		 */
+		void writeRows(BufferedImage rows, int y) throws IOException;
+
+		/**
+		 * Called after the last rows.
+		 */
+		void end() throws IOException;
+	}
+
+	private int bandHeight = 256;
+
+	public TiledResampleOp(int destWidth, int destHeight) {
+		super(destWidth, destHeight);
+	}
+
+	public TiledResampleOp(DimensionConstrain dimensionConstrain) {
+		super(dimensionConstrain);
+	}
+
+	public TiledResampleOp(int destWidth, int destHeight, ExecutorService executor) {
+		super(destWidth, destHeight, executor);
+	}
+
+	public TiledResampleOp(DimensionConstrain dimensionConstrain, ExecutorService executor) {
+		super(dimensionConstrain, executor);
+	}
+
+	public int getBandHeight() {
+		return bandHeight;
+	}
+
+	/**
+	 * @param bandHeight the number of (subsampled) source rows decoded at a time, default is 256
+	 */
+	public void setBandHeight(int bandHeight) {
+		if (bandHeight < 1){
+			throw new IllegalArgumentException("bandHeight must be positive, was " + bandHeight);
+		}
+		this.bandHeight = bandHeight;
+	}
+
+	/**
+	 * Resizes the first image of the reader a band at a time, into an image in memory. The unsharp mask is applied to
+	 * the result.
+	 *
+	 * @param reader a reader which input has been set, the reader is not disposed
+	 */
+	@Override
+	public BufferedImage filter(final ImageReader reader) throws IOException {
+		final BufferedImage[] result = new BufferedImage[1];
+		final RowSink sink = new RowSink() {
+			public void begin(int width, int height, ImageTypeSpecifier type) {
+				result[0] = type.createBufferedImage(width, height);
+			}
+
+			public void writeRows(BufferedImage rows, int y) {
+				result[0].getRaster().setRect(0, y, rows.getRaster());
+			}
+
+			public void end() {
+			}
+		};
+		return instrumented(reader, metrics -> {
+			resize(reader, sink);
+			return applyUnsharpenMask(result[0]);
+		});
+	}
+
+	/**
+	 * Resizes the first image of the reader a band at a time, and writes the result with the writer. The writer must
+	 * be able to write an empty image and replace its pixels, like the TIFF writer of Java 9 and later.
+	 *
+	 * @param reader a reader which input has been set, the reader is not disposed
+	 * @param writer a writer which output has been set, the writer is not disposed
+	 * @throws IOException if the image could not be decoded or written, or the writer does not support writing rows
+	 * @throws IllegalStateException if an unsharp mask is set, it needs the whole destination image
+	 */
+	public void filter(final ImageReader reader, final ImageWriter writer) throws IOException {
+		checkNoUnsharpenMask();
+		final RowSink sink = new RowSink() {
+			public void begin(int width, int height, ImageTypeSpecifier type) throws IOException {
+				if (!writer.canWriteEmpty()){
+					throw new IOException("The ImageWriter can not write the image a band at a time");
+				}
+				writer.prepareWriteEmpty(null, type, width, height, null, null, null);
+				if (!writer.canReplacePixels(0)){
+					throw new IOException("The ImageWriter can not write the image a band at a time");
+				}
+				writer.prepareReplacePixels(0, new Rectangle(0, 0, width, height));
+			}
+
+			public void writeRows(BufferedImage rows, int y) throws IOException {
+				final ImageWriteParam param = writer.getDefaultWriteParam();
+				param.setDestinationOffset(new Point(0, y));
+				writer.replacePixels(rows, param);
+			}
+
+			public void end() throws IOException {
+				writer.endReplacePixels();
+				writer.endWriteEmpty();
+			}
+		};
+		instrumented(reader, metrics -> {
+			resize(reader, sink);
+			return null;
+		});
+	}
+
+	/**
+	 * Resizes the first image of the reader a band at a time, and passes the destination rows to the sink.
+	 *
+	 * @param reader a reader which input has been set, the reader is not disposed
+	 * @throws IOException if the image could not be decoded, or the sink failed
+	 * @throws IllegalStateException if an unsharp mask is set, it needs the whole destination image
+	 */
+	public void filter(final ImageReader reader, final RowSink sink) throws IOException {
+		checkNoUnsharpenMask();
+		instrumented(reader, metrics -> {
+			resize(reader, sink);
+			return null;
+		});
+	}
+
+	private void checkNoUnsharpenMask() {
+		if (getUnsharpenMask() != UnsharpenMask.None){
+			throw new IllegalStateException("The unsharp mask is only supported by filter(ImageReader)");
+		}
+	}
+
+	/**
+	 * Runs a resize of the reader within the metrics and events of {@link AdvancedResizeOp#instrumented}, with the
+	 * size and type of the subsampled source.
+	 */
+	private <T> T instrumented(ImageReader reader, Resize<T, IOException> resize) throws IOException {
+		final int imageWidth = reader.getWidth(0);
+		final int imageHeight = reader.getHeight(0);
+		final Dimension dstDimension = getDestinationDimension(imageWidth, imageHeight);
+		final int subsampling = ImageUtils.getSourceSubsampling(imageWidth, imageHeight, dstDimension.width,
+				dstDimension.height);
+		final ImageTypeSpecifier type = reader.getImageTypes(0).next();
+		return instrumented((imageWidth + subsampling - 1) / subsampling, (imageHeight + subsampling - 1) / subsampling,
+				ImageUtils.imageTypeName(type.getBufferedImageType()), type.getNumBands(), dstDimension.width,
+				dstDimension.height, resize);
+	}
+
+	private void resize(ImageReader reader, RowSink sink) throws IOException {
+		final int imageWidth = reader.getWidth(0);
+		final int imageHeight = reader.getHeight(0);
+		final Dimension dstDimension = getDestinationDimension(imageWidth, imageHeight);
+		final int dstWidth = dstDimension.width;
+		final int dstHeight = dstDimension.height;
+		checkTargetSize(dstWidth, dstHeight);
+		final int subsampling = ImageUtils.getSourceSubsampling(imageWidth, imageHeight, dstWidth, dstHeight);
+		final int srcWidth = (imageWidth + subsampling - 1) / subsampling;
+		final int srcHeight = (imageHeight + subsampling - 1) / subsampling;
+
+		ResampleContext context = null;
+		int[] firstRows = null; // first source row of each destination row
+		int[] lastRows = null; // last source row of each destination row
+		int[] keepRows = null; // the first source row needed by a destination row from y
+		int resultType = 0;
+		WorkRows workRows = null;
+		final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+		final int[] rowSlots = new int[srcHeight]; // the slot of each source row, or -1
+		Arrays.fill(rowSlots, -1);
+		BufferedImage rowsImage = null;
+
+		int bandStart = 0;
+		int released = 0;
+		int y = 0; // the next destination row
+		while (y < dstHeight){
+			if (bandStart >= srcHeight){
+				throw new IllegalStateException("Destination row " + y + " needs rows beyond the source");
+			}
+			final int bandEnd = Math.min(srcHeight, bandStart + bandHeight);
+			final BufferedImage band = convertUnsupportedSource(readBand(reader, subsampling, imageWidth, imageHeight,
+					bandStart, bandEnd));
+			if (band.getWidth() != srcWidth || band.getHeight() != bandEnd - bandStart){
+				throw new IOException("The ImageReader ignored the source region");
+			}
+			if (context == null){
+				context = new ResampleContext(ImageUtils.nrChannels(band), srcWidth, srcHeight, dstWidth, dstHeight);
+				firstRows = new int[dstHeight];
+				lastRows = new int[dstHeight];
+				keepRows = new int[dstHeight];
+				findSourceRows(context.verticalSubsamplingData, srcHeight, firstRows, lastRows, keepRows);
+				resultType = getResultBufferedImageType(band);
+				// enough for a band and the rows of the previous band still needed, more are added if not
+				final int windowHeight = StreamingResampleOp.getWindowHeight(context.verticalSubsamplingData);
+				workRows = new WorkRows(context.bufferPool, context.workRowLength(), srcHeight,
+						Math.min(srcHeight, bandHeight + windowHeight));
+				for (int slot = 0; slot < workRows.getSlots(); slot++) {
+					freeSlots.add(slot);
+				}
+				sink.begin(dstWidth, dstHeight, ImageTypeSpecifier.createFromBufferedImageType(resultType));
+			}
+
+			// scale the band horizontally
+			final int rowLength = dstWidth * context.nrChannels;
+			for (int row = bandStart; row < bandEnd; row++) {
+				if (freeSlots.isEmpty()){
+					final int slots = workRows.getSlots();
+					workRows.addSlots(context.bufferPool, bandHeight);
+					for (int slot = slots; slot < workRows.getSlots(); slot++) {
+						freeSlots.add(slot);
+					}
+				}
+				final int slot = freeSlots.poll();
+				workRows.map(row, slot);
+				rowSlots[row] = slot;
+			}
+			final ResampleContext bandContext = context;
+			final WorkRows bandRows = workRows;
+			final int first = bandStart;
+			processPartitioned(context, bandEnd - bandStart, (from, to, step, reportProgress) ->
+					bandContext.horizontallyFromSrcToWork(band, first, bandRows, first + from, first + to, step,
+							reportProgress));
+			bandStart = bandEnd;
+
+			// scale the destination rows which have all their source rows vertically
+			int end = y;
+			while (end < dstHeight && lastRows[end] < bandEnd){
+				end++;
+			}
+			if (end > y){
+				final int rows = end - y;
+				if (rowsImage == null || rowsImage.getHeight() != rows){
+					rowsImage = new BufferedImage(dstWidth, rows, resultType);
+				}
+				// written directly into the raster of the rows if possible
+				final DirectRaster directOut = DirectRaster.of(rowsImage);
+				final byte[] outPixels = directOut == null ? context.bufferPool.borrow(rows * rowLength) : null;
+				final int outFirstRow = y;
+				processPartitioned(context, rows, (from, to, step, reportProgress) ->
+						bandContext.verticalFromWorkToDst(bandRows, outPixels, outFirstRow, directOut,
+								outFirstRow + from, outFirstRow + to, step, reportProgress));
+				if (outPixels != null){
+					ImageUtils.setBGRPixels(outPixels, rowsImage, 0, 0, dstWidth, rows);
+					context.bufferPool.release(outPixels);
+				}
+				sink.writeRows(rowsImage, y);
+				y = end;
+			}
+
+			// release the rows no longer needed
+			final int keep = y < dstHeight ? Math.min(keepRows[y], bandStart) : bandStart;
+			for (; released < keep; released++) {
+				if (rowSlots[released] >= 0){
+					freeSlots.add(rowSlots[released]);
+					workRows.unmap(released);
+					rowSlots[released] = -1;
+				}
+			}
+		}
+		sink.end();
+		workRows.release(context.bufferPool);
+	}
+
+	private static BufferedImage readBand(ImageReader reader, int subsampling, int imageWidth, int imageHeight,
+										  int bandStart, int bandEnd) throws IOException {
+		final ImageReadParam param = reader.getDefaultReadParam();
+		final int top = bandStart * subsampling;
+		param.setSourceRegion(new Rectangle(0, top, imageWidth,
+				Math.min(imageHeight - top, (bandEnd - bandStart) * subsampling)));
+		if (subsampling > 1){
+			param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+		}
+		return reader.read(0, param);
+	}
+
+	/**
+	 * Finds the first and last source row each destination row depends on, and the first source row that any of the
+	 * destination rows from y depends on.
+	 */
+	private static void findSourceRows(SubSamplingData subSamplingData, int srcHeight, int[] firstRows, int[] lastRows,
+									   int[] keepRows) {
+		final int[] arrN = subSamplingData.arrN;
+		final int[] arrPixel = subSamplingData.arrPixel;
+		final int numContributors = subSamplingData.numContributors;
+		for (int y = 0; y < firstRows.length; y++) {
+			final int index = y * numContributors;
+			int first = srcHeight - 1;
+			int last = 0;
+			for (int j = index; j < index + arrN[y]; j++) {
+				first = Math.min(first, arrPixel[j]);
+				last = Math.max(last, arrPixel[j]);
+			}
+			firstRows[y] = first;
+			lastRows[y] = last;
+		}
+		int keep = srcHeight;
+		for (int y = firstRows.length - 1; y >= 0; y--) {
+			keep = Math.min(keep, firstRows[y]);
+			keepRows[y] = keep;
+		}
+	}
+}
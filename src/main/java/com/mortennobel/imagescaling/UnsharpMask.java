@@ -0,0 +1,139 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import java.util.Arrays;
+
+/**
+ * The unsharp mask of {@link AdvancedResizeOp.UnsharpenMask}, applied to band ordered pixels (see
+ * {@link DirectRaster}).
+ *
+ * The result is the same as the jhlabs UnsharpFilter with a radius of {@value #RADIUS} and a threshold of
+ * {@value #THRESHOLD}: the pixels are blurred with a separable Gaussian kernel, rounding to bytes after each direction,
+ * and a sample that differs at least the threshold from its blurred value is moved away from it by 4 x amount times
+ * the difference. The edges are clamped and alpha is kept. Premultiplied colors are clamped to their alpha.
+ *
+ * The mask is applied in two passes over the rows, each of which may be split between threads: {@link #blurRows}
+ * blurs the rows horizontally into a separate buffer, and {@link #sharpenRows} blurs that buffer vertically and
+ * sharpens the pixels in place. The second pass must not start before the first is done.
+ */
+final class UnsharpMask {
+	static final float RADIUS = 2f;
+	static final int THRESHOLD = 10;
+
+	private final float[] kernel;
+	private final int kernelRadius;
+	private final float amount;
+	private final int width;
+	private final int height;
+	private final int nrChannels;
+	private final int colorChannels;
+	private final boolean premultiplied;
+
+	/**
+	 * @param factor the amount of the mask, see {@link AdvancedResizeOp.UnsharpenMask}
+	 * @param premultiplied true if the colors are premultiplied with alpha, only used for 4 channels
+	 */
+	UnsharpMask(float factor, int width, int height, int nrChannels, boolean premultiplied) {
+		this.kernel = makeKernel(RADIUS);
+		this.kernelRadius = kernel.length / 2;
+		this.amount = 4 * factor;
+		this.width = width;
+		this.height = height;
+		this.nrChannels = nrChannels;
+		this.colorChannels = nrChannels == 4 ? 3 : nrChannels;
+		this.premultiplied = premultiplied && nrChannels == 4;
+	}
+
+	/**
+	 * @return the normalized Gaussian kernel of jhlabs GaussianFilter, including its float rounding
+	 */
+	static float[] makeKernel(float radius) {
+		final int r = (int) Math.ceil(radius);
+		final float[] kernel = new float[r * 2 + 1];
+		final float sigma = radius / 3;
+		final float sigma22 = 2 * sigma * sigma;
+		final float sqrtSigmaPi2 = (float) Math.sqrt(2 * (float) Math.PI * sigma);
+		final float radius2 = radius * radius;
+		float total = 0;
+		for (int row = -r, index = 0; row <= r; row++, index++) {
+			final float distance = row * row;
+			kernel[index] = distance > radius2 ? 0 : (float) Math.exp(-distance / sigma22) / sqrtSigmaPi2;
+			total += kernel[index];
+		}
+		for (int i = 0; i < kernel.length; i++) {
+			kernel[i] /= total;
+		}
+		return kernel;
+	}
+
+	/**
+	 * Applies the mask to all rows in the calling thread.
+	 */
+	void apply(byte[] pixels) {
+		final byte[] blurred = new byte[pixels.length];
+		blurRows(pixels, blurred, 0, height, 1);
+		sharpenRows(pixels, blurred, 0, height, 1);
+	}
+
+	/**
+	 * Blurs the rows from, from+step, ... below to of pixels horizontally into blurred.
+	 */
+	void blurRows(byte[] pixels, byte[] blurred, int from, int to, int step) {
+		final int rowLength = width * nrChannels;
+		for (int y = from; y < to; y += step) {
+			final int rowStart = y * rowLength;
+			for (int x = 0; x < width; x++) {
+				final int index = rowStart + x * nrChannels;
+				for (int c = 0; c < colorChannels; c++) {
+					float sum = 0;
+					for (int k = -kernelRadius; k <= kernelRadius; k++) {
+						final int xx = Math.min(width - 1, Math.max(0, x + k));
+						sum += kernel[kernelRadius + k] * (pixels[rowStart + xx * nrChannels + c] & 0xff);
+					}
+					blurred[index + c] = (byte) clamp((int) (sum + 0.5));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Blurs the rows from, from+step, ... below to of blurred vertically, and sharpens the same rows of pixels with
+	 * the result. Needs the rows of blurred within the radius of the kernel.
+	 */
+	void sharpenRows(byte[] pixels, byte[] blurred, int from, int to, int step) {
+		final int rowLength = width * nrChannels;
+		final float[] sum = new float[rowLength];
+		for (int y = from; y < to; y += step) {
+			Arrays.fill(sum, 0);
+			for (int k = -kernelRadius; k <= kernelRadius; k++) {
+				final float weight = kernel[kernelRadius + k];
+				final int rowStart = Math.min(height - 1, Math.max(0, y + k)) * rowLength;
+				for (int i = 0; i < rowLength; i++) {
+					sum[i] += weight * (blurred[rowStart + i] & 0xff);
+				}
+			}
+
+			final int rowStart = y * rowLength;
+			for (int x = 0; x < rowLength; x += nrChannels) {
+				final int alpha = premultiplied ? pixels[rowStart + x + 3] & 0xff : 255;
+				for (int c = x; c < x + colorChannels; c++) {
+					final int original = pixels[rowStart + c] & 0xff;
+					final int blur = clamp((int) (sum[c] + 0.5));
+					if (Math.abs(original - blur) >= THRESHOLD){
+						final int sharpened = clamp((int) ((amount + 1) * (original - blur) + blur));
+						pixels[rowStart + c] = (byte) Math.min(alpha, sharpened);
+					}
+				}
+			}
+		}
+	}
+
+	private static int clamp(int value) {
+		return value < 0 ? 0 : (value > 255 ? 255 : value);
+	}
+}
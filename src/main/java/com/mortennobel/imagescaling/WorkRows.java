@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The horizontally scaled source rows used by the vertical pass.
+ *
+ * The rows are stored in slots of a few large arrays borrowed from a {@link BufferPool}, normally a single array with
+ * the rows after each other. An array holds at most {@value #MAX_ARRAY_LENGTH} bytes, larger work images are split
+ * over several arrays. By default source row n is in slot n, but operations that keep only some of the rows in memory
+ * map the rows to slots themselves, e.g. to a ring of slots.
+ */
+final class WorkRows {
+	static final int MAX_ARRAY_LENGTH = 1 << 30;
+
+	final int rowLength;
+	private final List<byte[]> arrays = new ArrayList<>();
+	private byte[][] slotArrays = new byte[0][];
+	private int[] slotOffsets = new int[0];
+	private final byte[][] rowArrays; // by source row, the array holding the row or null
+	private final int[] rowOffsets; // by source row, the index of the row in its array
+
+	/**
+	 * Creates a slot for each of the rows, with source row n in slot n.
+	 */
+	WorkRows(BufferPool pool, int rowLength, int rows) {
+		this(pool, rowLength, rows, rows);
+		for (int row = 0; row < rows; row++) {
+			map(row, row);
+		}
+	}
+
+	/**
+	 * Creates the given number of slots, with no rows mapped.
+	 */
+	WorkRows(BufferPool pool, int rowLength, int rows, int slots) {
+		this.rowLength = rowLength;
+		this.rowArrays = new byte[rows][];
+		this.rowOffsets = new int[rows];
+		addSlots(pool, slots);
+	}
+
+	/**
+	 * Borrows arrays for more slots from the pool.
+	 */
+	void addSlots(BufferPool pool, int slots) {
+		final int slotsPerArray = Math.max(1, MAX_ARRAY_LENGTH / rowLength);
+		int slot = slotOffsets.length;
+		slotArrays = Arrays.copyOf(slotArrays, slot + slots);
+		slotOffsets = Arrays.copyOf(slotOffsets, slot + slots);
+		while (slot < slotOffsets.length){
+			final int count = Math.min(slotsPerArray, slotOffsets.length - slot);
+			final byte[] array = pool.borrow(count * rowLength);
+			arrays.add(array);
+			for (int i = 0; i < count; i++, slot++) {
+				slotArrays[slot] = array;
+				slotOffsets[slot] = i * rowLength;
+			}
+		}
+	}
+
+	int getSlots() {
+		return slotOffsets.length;
+	}
+
+	/**
+	 * @return the array holding the source row
+	 */
+	byte[] array(int row) {
+		return rowArrays[row];
+	}
+
+	/**
+	 * @return the index of the first sample of the source row in its array
+	 */
+	int offset(int row) {
+		return rowOffsets[row];
+	}
+
+	/**
+	 * @return true if the source row is stored in the slot
+	 */
+	boolean isMapped(int row, int slot) {
+		return rowArrays[row] == slotArrays[slot] && rowOffsets[row] == slotOffsets[slot];
+	}
+
+	void map(int row, int slot) {
+		rowArrays[row] = slotArrays[slot];
+		rowOffsets[row] = slotOffsets[slot];
+	}
+
+	void unmap(int row) {
+		rowArrays[row] = null;
+	}
+
+	/**
+	 * Returns the arrays to the pool, the rows must not be used afterwards.
+	 */
+	void release(BufferPool pool) {
+		for (byte[] array : arrays) {
+			pool.release(array);
+		}
+		arrays.clear();
+	}
+}
@@ -19,7 +19,10 @@ import java.util.BitSet;
  *
  * @author Morten Nobel-Joergensen
  * @author Heinz Doerr
+ * @deprecated use {@link com.mortennobel.imagescaling.StreamingResampleOp}, which uses the same windowed scheme on
+ * multiple threads
  */
+@Deprecated
 public class ResampleOpSingleThread extends AdvancedResizeOp
 {
 	private final int MAX_CHANNEL_VALUE = 255;
@@ -30,29 +33,14 @@ public class ResampleOpSingleThread extends AdvancedResizeOp
 	private int dstWidth;
 	private int dstHeight;
 
-	private class SubSamplingData{
-		private final int[] arrN; // individual - per row or per column - nr of contributions
-		private final int[] arrPixel;  // 2Dim: [wid or hei][contrib]
-		private final float[] arrWeight; // 2Dim: [wid or hei][contrib]
-		private final int numContributors; // the primary index length for the 2Dim arrays : arrPixel and arrWeight
-		private final float width;
-
-		private SubSamplingData(int[] arrN, int[] arrPixel, float[] arrWeight, int numContributors, float width) {
-			this.arrN = arrN;
-			this.arrPixel = arrPixel;
-			this.arrWeight = arrWeight;
-			this.numContributors = numContributors;
-			this.width = width;
-		}
-	}
-
-	private SubSamplingData horizontalSubsamplingData;
-	private SubSamplingData verticalSubsamplingData;
+	private ResampleOp.SubSamplingData horizontalSubsamplingData;
+	private ResampleOp.SubSamplingData verticalSubsamplingData;
 
 	private int processedItems;
 	private int totalItems;
 
 	private ResampleFilter filter = ResampleFilters.getLanczos3Filter();
+	private SubSamplingCache subSamplingCache = SubSamplingCache.getDefault();
 
 	public ResampleOpSingleThread(int destWidth, int destHeight) {
 		super(DimensionConstrain.createAbsolutionDimension(destWidth, destHeight));
@@ -71,6 +59,17 @@ public class ResampleOpSingleThread extends AdvancedResizeOp
 		this.filter = filter;
 	}
 
+	public SubSamplingCache getSubSamplingCache() {
+		return subSamplingCache;
+	}
+
+	public void setSubSamplingCache(SubSamplingCache subSamplingCache) {
+		if (subSamplingCache == null){
+			throw new IllegalArgumentException("subSamplingCache must not be null");
+		}
+		this.subSamplingCache = subSamplingCache;
+	}
+
 	public BufferedImage doFilter(BufferedImage srcImg, BufferedImage dest, int dstWidth, int dstHeight) {
 		this.dstWidth = dstWidth;
 		this.dstHeight = dstHeight;
@@ -89,13 +88,13 @@ public class ResampleOpSingleThread extends AdvancedResizeOp
 		this.totalItems = srcHeight;
 
 		// Pre-calculate  sub-sampling
-		horizontalSubsamplingData = createSubSampling(srcWidth, dstWidth);
-		verticalSubsamplingData = createSubSampling(srcHeight, dstHeight);
+		horizontalSubsamplingData = subSamplingCache.get(filter, srcWidth, dstWidth);
+		verticalSubsamplingData = subSamplingCache.get(filter, srcHeight, dstHeight);
 
 		//final byte[] outPixels = new byte[dstWidth*dstHeight*nrChannels];
 
 		// Idea: Since only a small part of the buffer is used, scaling the image, we reuse the rows to save memory
-		final int bufferHeight = (int)Math.ceil(verticalSubsamplingData.width)*2;
+		final int bufferHeight = (int)Math.ceil(verticalSubsamplingData.getWidth())*2;
 		byte[][] workPixels = new byte[srcHeight][];
 		for (int i=0;i<bufferHeight && i<srcHeight;i++){
 			workPixels[i] = new byte[dstWidth*nrChannels];
@@ -120,115 +119,6 @@ public class ResampleOpSingleThread extends AdvancedResizeOp
 		return out;
     }
 
-	private SubSamplingData createSubSampling(int srcSize, int dstSize) {
-		float scale = (float) dstSize / (float)srcSize;
-		int[] arrN= new int[dstSize];
-		int numContributors;
-		float[] arrWeight;
-		int[] arrPixel;
-
-		final float fwidth= filter.getSamplingRadius();
-		final float width;
-		if (scale < 1.0f) {
-			width= fwidth / scale;
-			numContributors= (int)(width * 2.0f + 2); // Heinz: added 1 to be save with the ceilling
-			arrWeight= new float[dstSize * numContributors];
-			arrPixel= new int[dstSize * numContributors];
-
-			final float fNormFac= (float)(1f / (Math.ceil(width) / fwidth));
-			//
-			for (int i= 0; i < dstSize; i++) {
-				final int subindex= i * numContributors;
-				float center= i / scale;
-				int left= (int)Math.floor(center - width);
-				int right= (int)Math.ceil(center + width);
-
-				assert right-left<=numContributors;
-
-				for (int j= left; j <= right; j++) {
-					float weight;
-					weight= filter.apply((center - j) * fNormFac);
-
-					if (weight == 0.0f) {
-						continue;
-					}
-					int n;
-					if (j < 0) {
-						n= -j;
-					} else if (j >= srcSize) {
-						n= srcSize - j + srcSize - 1;
-					} else {
-						n= j;
-					}
-					int k= arrN[i];
-					arrN[i]++;
-					if (n < 0 || n >= srcSize) {
-						weight= 0.0f;// Flag that cell should not be used
-					}
-					arrPixel[subindex +k]= n;
-					arrWeight[subindex + k]= weight;
-				}
-				// normalize the filter's weight's so the sum equals to 1.0, very important for avoiding box type of artifacts
-				final int max= arrN[i];
-				float tot= 0;
-				for (int k= 0; k < max; k++)
-					tot+= arrWeight[subindex + k];
-				if (tot != 0f) { // 0 should never happen except bug in filter
-					for (int k= 0; k < max; k++)
-						arrWeight[subindex + k]/= tot;
-				}
-			}
-		} else
-			// super-sampling
-			// Scales from smaller to bigger height
-		{
-			width = fwidth;
-			numContributors= (int)(fwidth * 2.0f + 1);
-			arrWeight= new float[dstSize * numContributors];
-			arrPixel= new int[dstSize * numContributors];
-			//
-			for (int i= 0; i < dstSize; i++) {
-				final int subindex= i * numContributors;
-				float center= i / scale;
-				int left= (int)Math.floor(center - fwidth);
-				int right= (int)Math.ceil(center + fwidth);
-
-				for (int j= left; j <= right; j++) {
-					float weight= filter.apply(center - j);
-					if (weight == 0.0f) {
-						continue;
-					}
-					int n;
-					if (j < 0) {
-						n= -j;
-					} else if (j >= srcSize) {
-						n= srcSize - j + srcSize - 1;
-					} else {
-						n= j;
-					}
-					int k= arrN[i];
-					arrN[i]++;
-					if (n < 0 || n >= srcSize) {
-						weight= 0.0f;// Flag that cell should not be used
-					}
-					arrPixel[subindex +k]= n;
-					arrWeight[subindex + k]= weight;
-				}
-				// normalize the filter's weight's so the sum equals to 1.0, very important for avoiding box type of artifacts
-				final int max= arrN[i];
-				float tot= 0;
-				for (int k= 0; k < max; k++)
-					tot+= arrWeight[subindex + k];
-				assert tot!=0:"should never happen except bug in filter";
-				if (tot != 0f) {
-					for (int k= 0; k < max; k++)
-						arrWeight[subindex + k]/= tot;
-				}
-			}
-		}
-		return new SubSamplingData(arrN, arrPixel, arrWeight, numContributors, width);
-	}
-
 	/**
 	 * Pseudocode:
 	 * for each for in destination image
@@ -262,17 +152,26 @@ public class ResampleOpSingleThread extends AdvancedResizeOp
 
 		final BitSet isRowInitialized = new BitSet(srcHeight);
 
+		final int[] horizontalArrN = horizontalSubsamplingData.getArrN();
+		final int[] horizontalArrPixel = horizontalSubsamplingData.getArrPixel();
+		final float[] horizontalArrWeight = horizontalSubsamplingData.getArrWeight();
+		final int horizontalNumContributors = horizontalSubsamplingData.getNumContributors();
+		final int[] verticalArrN = verticalSubsamplingData.getArrN();
+		final int[] verticalArrPixel = verticalSubsamplingData.getArrPixel();
+		final float[] verticalArrWeight = verticalSubsamplingData.getArrWeight();
+		final int verticalNumContributors = verticalSubsamplingData.getNumContributors();
+
 		for (int dstY = dstHeight-1; dstY >= 0; dstY--)
         {
 			// vertical scaling
-			final int yTimesNumContributors = dstY * verticalSubsamplingData.numContributors;
-			final int max= verticalSubsamplingData.arrN[dstY];
+			final int yTimesNumContributors = dstY * verticalNumContributors;
+			final int max= verticalArrN[dstY];
 
 			// check that the horizontal rows are scaled horizontally
 			{
 				int index= yTimesNumContributors;
 				for (int j= max-1; j >=0 ; j--) {
-					int valueLocation = verticalSubsamplingData.arrPixel[index];
+					int valueLocation = verticalArrPixel[index];
 					index++;
 					if (!isRowInitialized.get(valueLocation)){
 						// do horizontal scaling
@@ -289,13 +188,13 @@ public class ResampleOpSingleThread extends AdvancedResizeOp
 							for (int i = dstWidth-1;i>=0 ; i--)
 							{
 								int sampleLocation = i*nrChannels;
-								final int horizontalMax = horizontalSubsamplingData.arrN[i];
+								final int horizontalMax = horizontalArrN[i];
 
 								float sample= 0.0f;
-								int horizontalIndex= i * horizontalSubsamplingData.numContributors;
+								int horizontalIndex= i * horizontalNumContributors;
 								for (int jj= horizontalMax-1; jj >= 0; jj--) {
 
-									sample += tempPixels[horizontalSubsamplingData.arrPixel[horizontalIndex]] * horizontalSubsamplingData.arrWeight[horizontalIndex];
+									sample += tempPixels[horizontalArrPixel[horizontalIndex]] * horizontalArrWeight[horizontalIndex];
 									horizontalIndex++;
 								}
 
@@ -316,8 +215,8 @@ public class ResampleOpSingleThread extends AdvancedResizeOp
 					float sample = 0.0f;
 					int index= yTimesNumContributors;
 					for (int j= max-1; j >=0 ; j--) {
-						int valueLocation = verticalSubsamplingData.arrPixel[index];
-						sample+= (workPixels[valueLocation][xLocation+channel]&0xff) * verticalSubsamplingData.arrWeight[index];
+						int valueLocation = verticalArrPixel[index];
+						sample+= (workPixels[valueLocation][xLocation+channel]&0xff) * verticalArrWeight[index];
 
 						index++;
 					}
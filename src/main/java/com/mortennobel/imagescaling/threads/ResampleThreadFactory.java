@@ -11,19 +11,36 @@ import java.util.concurrent.ThreadFactory;
 public class ResampleThreadFactory implements ThreadFactory {
 
     private final ThreadFactory threadFactory;
+    private final boolean daemon;
 
     public ResampleThreadFactory() {
         this(Executors.defaultThreadFactory());
     }
 
     public ResampleThreadFactory(final ThreadFactory threadFactory) {
+        this(threadFactory, false);
+    }
+
+    /**
+     * @param daemon if true the threads are marked as daemon threads, so idle pooled threads do not prevent the JVM
+     *               from exiting
+     */
+    public ResampleThreadFactory(final boolean daemon) {
+        this(Executors.defaultThreadFactory(), daemon);
+    }
+
+    public ResampleThreadFactory(final ThreadFactory threadFactory, final boolean daemon) {
         this.threadFactory = threadFactory;
+        this.daemon = daemon;
     }
 
     @Override
     public Thread newThread(final Runnable r) {
         final Thread thread = threadFactory.newThread(r);
         thread.setName("resample-" + thread.getName());
+        if (daemon) {
+            thread.setDaemon(true);
+        }
         return thread;
     }
 }
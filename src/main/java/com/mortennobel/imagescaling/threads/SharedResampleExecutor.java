@@ -0,0 +1,72 @@
+package com.mortennobel.imagescaling.threads;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The process wide executor used by the resize operations that are not given an executor of their own.
+ *
+ * The executor is created on first use with one daemon thread per available processor. Idle threads are released
+ * after a minute. Containers (e.g. a servlet context listener) should call {@link #shutdown()} when the application
+ * is stopped; a later use of the executor will simply create a new one.
+ */
+public final class SharedResampleExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static ThreadPoolExecutor executor;
+
+    private SharedResampleExecutor() {
+    }
+
+    /**
+     * @return the shared executor, it is created if it does not exist or has been shut down
+     */
+    public static synchronized ExecutorService get() {
+        if (executor == null || executor.isShutdown()) {
+            final int nThreads = Runtime.getRuntime().availableProcessors();
+            executor = new ThreadPoolExecutor(nThreads, nThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ResampleThreadFactory(true));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Initiates an orderly shutdown of the shared executor, if it has been created. Submitted tasks are executed.
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Attempts to stop all executing tasks of the shared executor, if it has been created.
+     *
+     * @return the tasks that never started execution
+     */
+    public static synchronized List<Runnable> shutdownNow() {
+        if (executor != null) {
+            return executor.shutdownNow();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Blocks until the shared executor has terminated after a shutdown request, or the timeout occurs.
+     *
+     * @return true if the executor terminated (or was never created), false if the timeout elapsed
+     */
+    public static boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final ExecutorService current;
+        synchronized (SharedResampleExecutor.class) {
+            current = executor;
+        }
+        return current == null || current.awaitTermination(timeout, unit);
+    }
+}
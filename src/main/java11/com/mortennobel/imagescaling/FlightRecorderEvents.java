@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The JDK Flight Recorder events of the resizes. This class is compiled for Java 11 and only created by
+ * {@link ResizeEvents} when the JVM has a flight recorder.
+ */
+final class FlightRecorderEvents implements ResizeEvents.Recorder {
+	private static final ThreadLocal<ResizeEvent> CURRENT = new ThreadLocal<>();
+
+	@Name("com.mortennobel.imagescaling.Resize")
+	@Label("Resize")
+	@Category("Java Image Scaling")
+	@Description("A resize by an AdvancedResizeOp")
+	static final class ResizeEvent extends Event {
+		@Label("Operation")
+		String operation;
+		@Label("Source Width")
+		int sourceWidth;
+		@Label("Source Height")
+		int sourceHeight;
+		@Label("Destination Width")
+		int destinationWidth;
+		@Label("Destination Height")
+		int destinationHeight;
+		@Label("Image Type")
+		String imageType;
+		@Label("Filter")
+		@Description("The resample filter or sampling of the op doing the resize")
+		String filter;
+		@Label("Threads")
+		int threads;
+
+		// the resize the thread was doing when this one began
+		transient ResizeEvent previous;
+	}
+
+	@Name("com.mortennobel.imagescaling.ResizePhase")
+	@Label("Resize Phase")
+	@Category("Java Image Scaling")
+	@Description("A pass or another phase of a resize, with the sizes of the resize it is part of")
+	static final class ResizePhaseEvent extends Event {
+		@Label("Phase")
+		String phase;
+		@Label("Operation")
+		String operation;
+		@Label("Source Width")
+		int sourceWidth;
+		@Label("Source Height")
+		int sourceHeight;
+		@Label("Destination Width")
+		int destinationWidth;
+		@Label("Destination Height")
+		int destinationHeight;
+		@Label("Image Type")
+		String imageType;
+		@Label("Filter")
+		String filter;
+		@Label("Threads")
+		int threads;
+	}
+
+	@Override
+	public Object beginResize(AdvancedResizeOp op, int srcWidth, int srcHeight, String imageType, int dstWidth,
+							  int dstHeight) {
+		final ResizeEvent event = new ResizeEvent();
+		if (!event.isEnabled()){
+			return null;
+		}
+		event.operation = op.getClass().getSimpleName();
+		event.sourceWidth = srcWidth;
+		event.sourceHeight = srcHeight;
+		event.destinationWidth = dstWidth;
+		event.destinationHeight = dstHeight;
+		event.imageType = imageType;
+		event.filter = op.getFilterName();
+		event.threads = op.getNumberOfThreads();
+		event.previous = CURRENT.get();
+		CURRENT.set(event);
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void describe(AdvancedResizeOp op) {
+		final ResizeEvent event = CURRENT.get();
+		if (event != null){
+			event.filter = op.getFilterName();
+			event.threads = op.getNumberOfThreads();
+		}
+	}
+
+	@Override
+	public void commitResize(Object resizeEvent) {
+		final ResizeEvent event = (ResizeEvent) resizeEvent;
+		event.commit();
+		if (event.previous == null){
+			CURRENT.remove();
+		} else {
+			CURRENT.set(event.previous);
+		}
+	}
+
+	@Override
+	public Object beginPhase() {
+		final ResizePhaseEvent event = new ResizePhaseEvent();
+		if (!event.isEnabled()){
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void commitPhase(Object phaseEvent, ResizeMetrics.Phase phase) {
+		final ResizePhaseEvent event = (ResizePhaseEvent) phaseEvent;
+		event.end();
+		if (!event.shouldCommit()){
+			return;
+		}
+		event.phase = phase.name();
+		final ResizeEvent resize = CURRENT.get();
+		if (resize != null){
+			event.operation = resize.operation;
+			event.sourceWidth = resize.sourceWidth;
+			event.sourceHeight = resize.sourceHeight;
+			event.destinationWidth = resize.destinationWidth;
+			event.destinationHeight = resize.destinationHeight;
+			event.imageType = resize.imageType;
+			event.filter = resize.filter;
+			event.threads = resize.threads;
+		}
+		event.commit();
+	}
+}
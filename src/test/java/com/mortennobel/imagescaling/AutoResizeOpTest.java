@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class AutoResizeOpTest {
+	@Test
+	public void testQualities(){
+		AutoResizeOp op = new AutoResizeOp(200, 150);
+		op.setQuality(AutoResizeOp.Quality.Best);
+		ResampleOp best = (ResampleOp) op.createPlan(4000, 3000, 3, 200, 150).op;
+		assertTrue(best.isLinearLight());
+		assertFalse(best.isPreReduction());
+		assertSame(ResampleFilters.getLanczos3Filter(), best.getFilter());
+
+		op.setQuality(AutoResizeOp.Quality.Balanced);
+		ResampleOp balanced = (ResampleOp) op.createPlan(4000, 3000, 3, 200, 150).op;
+		assertTrue(balanced.isPreReduction());
+		assertTrue(balanced.isFixedPointArithmetic());
+		assertSame(ResampleFilters.getLanczos3Filter(), balanced.getFilter());
+		ResampleOp enlarge = (ResampleOp) op.createPlan(100, 75, 3, 200, 150).op;
+		assertSame(ResampleFilters.getMitchellFilter(), enlarge.getFilter());
+
+		op.setQuality(AutoResizeOp.Quality.Fast);
+		assertTrue(op.createPlan(4000, 3000, 3, 200, 150).op instanceof ThumbnailRescaleOp);
+		ResampleOp fast = (ResampleOp) op.createPlan(400, 300, 3, 200, 150).op;
+		assertSame(ResampleFilters.getTriangleFilter(), fast.getFilter());
+	}
+
+	@Test
+	public void testSmallImagesSingleThreaded(){
+		AutoResizeOp op = new AutoResizeOp(50, 50);
+		assertEquals(1, ((ResampleOp) op.createPlan(100, 100, 3, 50, 50).op).getNumberOfThreads());
+		ResampleOp large = (ResampleOp) op.createPlan(8000, 6000, 3, 4000, 3000).op;
+		assertEquals(Runtime.getRuntime().availableProcessors(), large.getNumberOfThreads());
+	}
+
+	@Test
+	public void testTimeBudget(){
+		AutoResizeOp op = new AutoResizeOp(1000, 750);
+		op.setQuality(AutoResizeOp.Quality.Best);
+		AutoResizeOp.Plan unlimited = op.createPlan(4000, 3000, 3, 1000, 750);
+		assertTrue(((ResampleOp) unlimited.op).isLinearLight());
+
+		long budget = unlimited.estimatedNanos / 1000000 - 1;
+		op.setTimeBudget(budget);
+		AutoResizeOp.Plan limited = op.createPlan(4000, 3000, 3, 1000, 750);
+		assertFalse(limited.op instanceof ResampleOp && ((ResampleOp) limited.op).isLinearLight());
+		assertTrue(limited.estimatedNanos <= budget * 1000000);
+
+		op.setTimeBudget(1);
+		assertTrue(op.createPlan(4000, 3000, 3, 1000, 750).op instanceof ThumbnailRescaleOp);
+	}
+
+	@Test
+	public void testFilter() throws IOException {
+		BufferedImage image = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		for (AutoResizeOp.Quality quality : AutoResizeOp.Quality.values()) {
+			for (int size : new int[]{60, 200, 700}) {
+				AutoResizeOp op = new AutoResizeOp(size, size);
+				op.setQuality(quality);
+				op.setUnsharpenMask(AdvancedResizeOp.UnsharpenMask.Normal);
+				final float[] progress = {0};
+				op.addProgressListener(fraction -> progress[0] = fraction);
+				BufferedImage result = op.filter(image, null);
+				assertEquals(size, result.getWidth());
+				assertEquals(size, result.getHeight());
+				if (!(op.createPlan(image.getWidth(), image.getHeight(), 3, size, size).op instanceof ThumbnailRescaleOp)){
+					assertEquals(1f, progress[0], 0.001f);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+public class DirectRasterTest {
+	private static final int[] TYPES = {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+			BufferedImage.TYPE_4BYTE_ABGR_PRE, BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_INT_RGB,
+			BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE};
+
+	private static BufferedImage copy(BufferedImage image){
+		BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+		copy.setData(image.getData());
+		return copy;
+	}
+
+	@Test
+	public void testReadSameAsRaster() throws Exception {
+		BufferedImage flower = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		for (int type : TYPES) {
+			BufferedImage image = ImageUtils.convert(flower, type);
+			BufferedImage subImage = image.getSubimage(13, 7, 50, 40);
+			DirectRaster raster = DirectRaster.of(subImage);
+			assertNotNull(raster);
+			int nrChannels = ImageUtils.nrChannels(image);
+			byte[] expected = new byte[50 * nrChannels];
+			byte[] actual = new byte[50 * nrChannels];
+			for (int y = 0; y < 40; y++) {
+				ImageUtils.getPixelsBGR(copy(subImage), y, 50, expected, new int[50]);
+				ImageUtils.getPixelsBGR(subImage, y, 50, actual, new int[50]);
+				assertArrayEquals(ImageUtils.imageTypeName(image), expected, actual);
+				// with the raster wrapped once for all rows
+				ImageUtils.getPixelsBGR(subImage, raster, y, 50, actual, new int[50]);
+				assertArrayEquals(ImageUtils.imageTypeName(image), expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void testWriteSubImage() throws Exception {
+		BufferedImage flower = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		for (int type : TYPES) {
+			BufferedImage source = ImageUtils.convert(flower, type);
+			int nrChannels = ImageUtils.nrChannels(source);
+			byte[] pixels = new byte[20 * 10 * nrChannels];
+			for (int y = 0; y < 10; y++) {
+				System.arraycopy(ImageUtils.getPixelsBGR(source.getSubimage(0, y, 20, 1), 0, 20,
+						new byte[20 * nrChannels], new int[20]), 0, pixels, y * 20 * nrChannels, 20 * nrChannels);
+			}
+
+			BufferedImage target = new BufferedImage(60, 50, type);
+			ImageUtils.setBGRPixels(pixels, target.getSubimage(10, 20, 40, 20), 5, 3, 20, 10);
+			for (int y = 0; y < 50; y++) {
+				for (int x = 0; x < 60; x++) {
+					boolean inside = x >= 15 && x < 35 && y >= 23 && y < 33;
+					int expected = inside ? source.getRGB(x - 15, y - 23) : 0;
+					assertEquals(ImageUtils.imageTypeName(target), expected, target.getRGB(x, y) & (inside ? -1 : 0x00ffffff));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testResampleSubImage() throws Exception {
+		BufferedImage flower = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		for (int type : TYPES) {
+			BufferedImage subImage = ImageUtils.convert(flower, type).getSubimage(21, 11, 150, 100);
+			for (boolean fixedPoint : new boolean[]{false, true}) {
+				ResampleOp resampleOp = new ResampleOp(60, 40);
+				resampleOp.setFixedPointArithmetic(fixedPoint);
+				BufferedImage expected = resampleOp.filter(copy(subImage), null);
+				BufferedImage actual = resampleOp.filter(subImage, null);
+				for (int y = 0; y < 40; y++) {
+					for (int x = 0; x < 60; x++) {
+						assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testResampleIntoSubImage() throws Exception {
+		BufferedImage flower = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		for (int type : TYPES) {
+			BufferedImage source = ImageUtils.convert(flower, type);
+			for (ResampleOp resampleOp : new ResampleOp[]{new ResampleOp(60, 40), new StreamingResampleOp(60, 40)}) {
+				BufferedImage expected = resampleOp.filter(source, null);
+				BufferedImage target = new BufferedImage(100, 80, type);
+				BufferedImage dest = target.getSubimage(13, 7, 60, 40);
+				assertSame(dest, resampleOp.filter(source, dest));
+				for (int y = 0; y < 80; y++) {
+					for (int x = 0; x < 100; x++) {
+						boolean inside = x >= 13 && x < 73 && y >= 7 && y < 47;
+						int rgb = target.getRGB(x, y);
+						if (inside){
+							assertEquals(ImageUtils.imageTypeName(target), expected.getRGB(x - 13, y - 7), rgb);
+						} else {
+							assertEquals(ImageUtils.imageTypeName(target), 0, rgb & 0x00ffffff);
+						}
+					}
+				}
+			}
+		}
+	}
+}
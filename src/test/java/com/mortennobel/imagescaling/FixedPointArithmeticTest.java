@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class FixedPointArithmeticTest {
+	private BufferedImage image;
+
+	@Before
+	public void setUp() throws IOException {
+		image = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+	}
+
+	private static BufferedImage convert(BufferedImage src, int type){
+		BufferedImage img = new BufferedImage(src.getWidth(), src.getHeight(), type);
+		Graphics2D g2d = img.createGraphics();
+		g2d.drawImage(src, 0, 0, null);
+		g2d.dispose();
+		return img;
+	}
+
+	private static void assertWithinTwoLsb(BufferedImage expected, BufferedImage actual){
+		assertWithinTwoLsb(expected, actual, 0);
+	}
+
+	/**
+	 * Checks that no sample differs by more than two, and that at most maxOffByTwo samples differ by two, the others by
+	 * at most one.
+	 *
+	 * @param maxOffByTwo the number of samples allowed to differ by two
+	 */
+	private static void assertWithinTwoLsb(BufferedImage expected, BufferedImage actual, int maxOffByTwo){
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		Raster expectedRaster = expected.getRaster();
+		Raster actualRaster = actual.getRaster();
+		assertEquals(expectedRaster.getNumBands(), actualRaster.getNumBands());
+		int offByTwo = 0;
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				for (int b = 0; b < expectedRaster.getNumBands(); b++) {
+					int diff = Math.abs(expectedRaster.getSample(x, y, b) - actualRaster.getSample(x, y, b));
+					if (diff == 2){
+						offByTwo++;
+					}
+					assertTrue("Pixel (" + x + "," + y + ") band " + b + " differs by " + diff, diff <= 2);
+				}
+			}
+		}
+		assertTrue(offByTwo + " samples differs by two", offByTwo <= maxOffByTwo);
+	}
+
+	private void assertFixedPointMatchesFloat(BufferedImage src, int dstWidth, int dstHeight, ResampleFilter filter){
+		assertFixedPointMatchesFloat(src, dstWidth, dstHeight, filter, 0);
+	}
+
+	private void assertFixedPointMatchesFloat(BufferedImage src, int dstWidth, int dstHeight, ResampleFilter filter,
+											  int maxOffByTwo){
+		ResampleOp floatOp = new ResampleOp(dstWidth, dstHeight);
+		floatOp.setFilter(filter);
+		ResampleOp fixedOp = new ResampleOp(dstWidth, dstHeight);
+		fixedOp.setFilter(filter);
+		fixedOp.setFixedPointArithmetic(true);
+		assertWithinTwoLsb(floatOp.filter(src, null), fixedOp.filter(src, null), maxOffByTwo);
+	}
+
+	@Test
+	public void testDownscale3Channels(){
+		assertFixedPointMatchesFloat(image, 200, 150, ResampleFilters.getLanczos3Filter());
+		assertFixedPointMatchesFloat(image, 97, 61, ResampleFilters.getMitchellFilter());
+	}
+
+	/**
+	 * Each pass is within one, but when enlarging, a rounding difference in the horizontal pass may be amplified by
+	 * the negative lobes of the vertical pass. This happens for very few samples.
+	 */
+	@Test
+	public void testUpscale3Channels(){
+		BufferedImage src = image.getSubimage(0, 0, 100, 80);
+		assertFixedPointMatchesFloat(src, 333, 250, ResampleFilters.getLanczos3Filter(), 333*250*3/1000);
+	}
+
+	@Test
+	public void test4Channels(){
+		assertFixedPointMatchesFloat(convert(image, BufferedImage.TYPE_INT_ARGB), 200, 150, ResampleFilters.getLanczos3Filter());
+		assertFixedPointMatchesFloat(convert(image, BufferedImage.TYPE_4BYTE_ABGR), 120, 300, ResampleFilters.getBiCubicFilter());
+	}
+
+	@Test
+	public void testGray(){
+		assertFixedPointMatchesFloat(convert(image, BufferedImage.TYPE_BYTE_GRAY), 200, 150, ResampleFilters.getLanczos3Filter());
+	}
+
+	@Test
+	public void testFlatAreaStaysFlat(){
+		BufferedImage src = new BufferedImage(101, 77, BufferedImage.TYPE_3BYTE_BGR);
+		Graphics2D g2d = src.createGraphics();
+		g2d.setColor(new Color(200, 100, 3));
+		g2d.fillRect(0, 0, src.getWidth(), src.getHeight());
+		g2d.dispose();
+
+		ResampleOp fixedOp = new ResampleOp(37, 150);
+		fixedOp.setFixedPointArithmetic(true);
+		BufferedImage result = fixedOp.filter(src, null);
+		for (int y = 0; y < result.getHeight(); y++) {
+			for (int x = 0; x < result.getWidth(); x++) {
+				assertEquals(new Color(200, 100, 3).getRGB(), result.getRGB(x, y));
+			}
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class ForkJoinTest {
+
+	private static byte[] data(BufferedImage image){
+		return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+	}
+
+	@Test
+	public void testSameAsSingleThread() throws Exception {
+		BufferedImage image = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		ResampleOp singleThread = new ResampleOp(150, 97);
+		singleThread.setNumberOfThreads(1);
+		byte[] expected = data(singleThread.filter(image, null));
+
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			ResampleOp resampleOp = new ResampleOp(150, 97, pool);
+			resampleOp.setNumberOfThreads(3);
+			assertArrayEquals(expected, data(resampleOp.filter(image, null)));
+
+			BufferedImage tiny = new ResampleOp(5, 5).filter(image, null);
+			ResampleOp upscale = new ResampleOp(40, 3, pool);
+			singleThread = new ResampleOp(40, 3);
+			singleThread.setNumberOfThreads(1);
+			assertArrayEquals(data(singleThread.filter(tiny, null)), data(upscale.filter(tiny, null)));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testConcurrentImagesOnSharedPool() throws Exception {
+		final BufferedImage image = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		final byte[] expected = data(new ResampleOp(120, 80).filter(image, null));
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			final ResampleOp resampleOp = new ResampleOp(120, 80, pool);
+			List<Future<BufferedImage>> results = new ArrayList<>();
+			for (int i = 0; i < 6; i++) {
+				// resize from inside the pool as well, the waiting worker must not dead lock
+				results.add(i % 2 == 0 ? pool.submit(() -> resampleOp.filter(image, null)) :
+						ForkJoinPool.commonPool().submit(() -> resampleOp.filter(image, null)));
+			}
+			for (Future<BufferedImage> result : results) {
+				assertArrayEquals(expected, data(result.get()));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Processes 64 rows of a pass on a pool of 2, with ranges of 8 rows.
+	 *
+	 * @return the thread that processed each row
+	 */
+	private static Thread[] processPass(ForkJoinPool pool, final Thread reportingThread) {
+		final Thread[] threads = new Thread[64];
+		ResampleOp.processPartitioned(pool, 2, 0, ResampleOp.Partitioning.Contiguous, 1, threads.length,
+				(from, to, step, reportProgress) -> {
+					assertEquals(Thread.currentThread() == reportingThread, reportProgress);
+					for (int y = from; y < to; y += step) {
+						assertNull(threads[y]);
+						threads[y] = Thread.currentThread();
+						try {
+							Thread.sleep(2);
+						} catch (InterruptedException e) {
+							throw new IllegalStateException(e);
+						}
+					}
+				});
+		return threads;
+	}
+
+	private static int rowsOf(Thread[] threads, Thread thread) {
+		int rows = 0;
+		for (Thread t : threads) {
+			assertNotNull(t);
+			if (t == thread){
+				rows++;
+			}
+		}
+		return rows;
+	}
+
+	@Test
+	public void testCallerTakesPart() throws Exception {
+		final ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			// the caller keeps claiming ranges, instead of waiting after the first one
+			assertTrue(rowsOf(processPass(pool, Thread.currentThread()), Thread.currentThread()) > 8);
+			// a worker of the pool joins the parts of the pass
+			assertTrue(pool.submit(() -> {
+				final Thread worker = Thread.currentThread();
+				return rowsOf(processPass(pool, worker), worker);
+			}).get() > 0);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		final BufferedImage image = new BufferedImage(3000, 3000, BufferedImage.TYPE_3BYTE_BGR);
+		final ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			final ResampleOp resampleOp = new ResampleOp(1000, 1000, pool);
+			resampleOp.setNumberOfThreads(2);
+			resampleOp.setTimeout(1);
+			try {
+				resampleOp.filter(image, null);
+				fail("The resize did not time out");
+			} catch (RuntimeException e) {
+				assertEquals("Timeout (1)", e.getMessage());
+			} finally {
+				Thread.interrupted();
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class LinearLightTest {
+	private static final int[] TYPES = {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+			BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_BGR,
+			BufferedImage.TYPE_INT_ARGB};
+
+	@Test
+	public void testRoundTrip(){
+		for (int i = 0; i < 256; i++) {
+			assertEquals(i, LinearLight.toSRGB(LinearLight.TO_LINEAR[i]));
+			assertEquals(i, LinearLight.toAlpha(LinearLight.ALPHA_TO_LINEAR[i]));
+		}
+		assertEquals(0f, LinearLight.TO_LINEAR[0], 0f);
+		assertEquals(LinearLight.MAX_VALUE, LinearLight.TO_LINEAR[255], 0f);
+		assertEquals(0, LinearLight.toSRGB(-100));
+		assertEquals(255, LinearLight.toSRGB(100000));
+	}
+
+	@Test
+	public void testLinesKeepBrightness(){
+		// alternating black and white columns average to half the light, which is 188 in sRGB, not 128
+		BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < 100; y++) {
+			for (int x = 0; x < 200; x += 2) {
+				image.setRGB(x, y, 0xffffff);
+			}
+		}
+		ResampleOp resampleOp = new ResampleOp(50, 25);
+		resampleOp.setFilter(ResampleFilters.getBoxFilter());
+		assertEquals(128, resampleOp.filter(image, null).getRGB(25, 12) & 0xff, 1);
+		resampleOp.setLinearLight(true);
+		assertEquals(188, resampleOp.filter(image, null).getRGB(25, 12) & 0xff, 1);
+	}
+
+	@Test
+	public void testUniformColorUnchanged(){
+		for (int type : TYPES) {
+			BufferedImage image = new BufferedImage(90, 70, type);
+			for (int y = 0; y < 70; y++) {
+				for (int x = 0; x < 90; x++) {
+					image.setRGB(x, y, 0x80c86432);
+				}
+			}
+			for (boolean fixedPoint : new boolean[]{false, true}) {
+				ResampleOp resampleOp = new ResampleOp(31, 23);
+				resampleOp.setLinearLight(true);
+				resampleOp.setFixedPointArithmetic(fixedPoint);
+				BufferedImage result = resampleOp.filter(image, null);
+				for (int y = 0; y < 23; y++) {
+					for (int x = 0; x < 31; x++) {
+						assertEquals(ImageUtils.imageTypeName(image), image.getRGB(0, 0), result.getRGB(x, y));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSameForAllOps() throws IOException {
+		BufferedImage flower = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		for (int type : TYPES) {
+			BufferedImage image = ImageUtils.convert(flower, type);
+			ResampleOp resampleOp = new ResampleOp(97, 61);
+			resampleOp.setLinearLight(true);
+			BufferedImage expected = resampleOp.filter(image, null);
+			StreamingResampleOp streamingOp = new StreamingResampleOp(97, 61);
+			streamingOp.setLinearLight(true);
+			BufferedImage streamed = streamingOp.filter(image, null);
+			ResampleOp interleavedOp = new ResampleOp(97, 61);
+			interleavedOp.setLinearLight(true);
+			interleavedOp.setPartitioning(ResampleOp.Partitioning.Interleaved);
+			interleavedOp.setNumberOfThreads(3);
+			BufferedImage interleaved = interleavedOp.filter(image, null);
+			BufferedImage converted = resampleOp.filter(ImageUtils.convert(image, BufferedImage.TYPE_INT_ARGB), null);
+			for (int y = 0; y < 61; y++) {
+				for (int x = 0; x < 97; x++) {
+					assertEquals(ImageUtils.imageTypeName(image), expected.getRGB(x, y), streamed.getRGB(x, y));
+					assertEquals(ImageUtils.imageTypeName(image), expected.getRGB(x, y), interleaved.getRGB(x, y));
+					if (type != BufferedImage.TYPE_BYTE_GRAY){
+						assertEquals(ImageUtils.imageTypeName(image), expected.getRGB(x, y) & 0xffffff,
+								converted.getRGB(x, y) & 0xffffff);
+					}
+				}
+			}
+		}
+	}
+}
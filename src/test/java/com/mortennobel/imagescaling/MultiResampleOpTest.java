@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class MultiResampleOpTest {
+	private final List<DimensionConstrain> targets = Arrays.asList(
+			DimensionConstrain.createMaxDimension(400, 400),
+			DimensionConstrain.createMaxDimension(64, 64),
+			DimensionConstrain.createAbsolutionDimension(400, 100),
+			DimensionConstrain.createMaxDimension(160, 160),
+			DimensionConstrain.createMaxDimension(1000, 1000));
+
+	@Test
+	public void testSameAsResampleOp(){
+		for (int type : new int[]{BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_ARGB,
+				BufferedImage.TYPE_BYTE_GRAY}) {
+			final BufferedImage image = createImage(601, 443, type);
+			for (boolean fixedPoint : new boolean[]{false, true}) {
+				final MultiResampleOp multiResampleOp = new MultiResampleOp(targets);
+				multiResampleOp.setFixedPointArithmetic(fixedPoint);
+				multiResampleOp.setNumberOfThreads(3);
+				final List<BufferedImage> outputs = multiResampleOp.filterAll(image);
+				assertEquals(targets.size(), outputs.size());
+				for (int i = 0; i < targets.size(); i++) {
+					final ResampleOp resampleOp = new ResampleOp(targets.get(i));
+					resampleOp.setFixedPointArithmetic(fixedPoint);
+					assertSameImage(resampleOp.filter(image, null), outputs.get(i));
+				}
+				assertSameImage(outputs.get(0), multiResampleOp.filter(image, null));
+			}
+		}
+	}
+
+	@Test
+	public void testFindInputs(){
+		final Dimension[] dimensions = {new Dimension(400, 300), new Dimension(64, 48), new Dimension(400, 100),
+				new Dimension(160, 120), new Dimension(1000, 750)};
+		assertArrayEquals(new int[]{-1, -1, -1, -1, -1}, MultiResampleOp.findInputs(dimensions, false));
+		// 64x48 uses the smallest output that is twice as large, 160x120
+		assertArrayEquals(new int[]{4, 3, 4, 0, -1}, MultiResampleOp.findInputs(dimensions, true));
+	}
+
+	@Test
+	public void testCascade(){
+		final BufferedImage image = createSmoothImage(1600, 1200);
+		final MultiResampleOp multiResampleOp = new MultiResampleOp(targets);
+		multiResampleOp.setCascade(true);
+		final List<BufferedImage> outputs = multiResampleOp.filterAll(image);
+		for (int i = 0; i < targets.size(); i++) {
+			final BufferedImage expected = new ResampleOp(targets.get(i)).filter(image, null);
+			final BufferedImage actual = outputs.get(i);
+			assertEquals(expected.getWidth(), actual.getWidth());
+			assertEquals(expected.getHeight(), actual.getHeight());
+			for (int y = 0; y < expected.getHeight(); y++) {
+				for (int x = 0; x < expected.getWidth(); x++) {
+					final int e = expected.getRGB(x, y);
+					final int a = actual.getRGB(x, y);
+					for (int shift = 0; shift < 24; shift += 8) {
+						assertEquals((e >> shift) & 0xff, (a >> shift) & 0xff, 2);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testProgress(){
+		final BufferedImage image = createImage(601, 443, BufferedImage.TYPE_3BYTE_BGR);
+		final ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			for (ExecutorService executor : new ExecutorService[]{null, pool}) {
+				final MultiResampleOp multiResampleOp = new MultiResampleOp(targets, executor);
+				multiResampleOp.setCascade(true);
+				multiResampleOp.setNumberOfThreads(3);
+				multiResampleOp.setUnsharpenMask(AdvancedResizeOp.UnsharpenMask.Soft);
+				final List<Float> fractions = new ArrayList<>();
+				multiResampleOp.addProgressListener(fractions::add);
+				multiResampleOp.filterAll(image);
+				float last = 0;
+				for (float fraction : fractions) {
+					assertTrue(fractions.toString(), fraction > last);
+					last = fraction;
+				}
+				assertEquals(1f, last, 0f);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoTargets(){
+		new MultiResampleOp(Arrays.<DimensionConstrain>asList());
+	}
+
+	private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getType(), actual.getType());
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals(x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+			}
+		}
+	}
+
+	private static BufferedImage createImage(int width, int height, int type) {
+		final BufferedImage image = new BufferedImage(width, height, type);
+		final Random random = new Random(11);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, random.nextInt());
+			}
+		}
+		return image;
+	}
+
+	private static BufferedImage createSmoothImage(int width, int height) {
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				final int red = x * 255 / width;
+				final int green = y * 255 / height;
+				final int blue = (int) (127.5 + 127.5 * Math.sin(x / 90.0) * Math.cos(y / 70.0));
+				image.setRGB(x, y, red << 16 | green << 8 | blue);
+			}
+		}
+		return image;
+	}
+}
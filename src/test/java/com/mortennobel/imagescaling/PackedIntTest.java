@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+public class PackedIntTest {
+
+	private static void assertSameRGB(BufferedImage expected, BufferedImage actual){
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+			}
+		}
+	}
+
+	private static void assertSameAsBytePath(BufferedImage flower, int packedType, int byteType, int threads){
+		BufferedImage packed = ImageUtils.convert(flower, packedType);
+		BufferedImage bytes = ImageUtils.convert(flower, byteType);
+		for (boolean fixedPoint : new boolean[]{false, true}) {
+			ResampleOp resampleOp = new ResampleOp(91, 67);
+			resampleOp.setNumberOfThreads(threads);
+			resampleOp.setFixedPointArithmetic(fixedPoint);
+			BufferedImage result = resampleOp.filter(packed, null);
+			assertEquals(packedType, result.getType());
+			assertSameRGB(resampleOp.filter(bytes, null), result);
+		}
+	}
+
+	@Test
+	public void testSameAsBytePath() throws Exception {
+		BufferedImage flower = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		for (int threads = 1; threads <= 3; threads += 2) {
+			assertSameAsBytePath(flower, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR, threads);
+			assertSameAsBytePath(flower, BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR, threads);
+			assertSameAsBytePath(flower, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR, threads);
+		}
+	}
+
+	@Test
+	public void testPremultipliedStaysPremultiplied() throws Exception {
+		BufferedImage flower = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		BufferedImage source = new BufferedImage(flower.getWidth(), flower.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+		for (int y = 0; y < source.getHeight(); y++) {
+			for (int x = 0; x < source.getWidth(); x++) {
+				source.setRGB(x, y, flower.getRGB(x, y) & (x < source.getWidth() / 2 ? 0x80ffffff : 0xffffffff));
+			}
+		}
+		ResampleOp resampleOp = new ResampleOp(40, 30);
+		resampleOp.setFilter(ResampleFilters.getTriangleFilter());
+		BufferedImage result = resampleOp.filter(source, null);
+		assertEquals(BufferedImage.TYPE_INT_ARGB_PRE, result.getType());
+		// a filter without negative lobes averages the premultiplied colors, which can not exceed the averaged alpha
+		for (int y = 0; y < 30; y++) {
+			for (int x = 0; x < 40; x++) {
+				int pixel = ((int[]) result.getRaster().getDataElements(x, y, null))[0];
+				int alpha = pixel >>> 24;
+				assertTrue(((pixel >> 16) & 0xff) <= alpha + 1);
+				assertTrue(((pixel >> 8) & 0xff) <= alpha + 1);
+				assertTrue((pixel & 0xff) <= alpha + 1);
+			}
+		}
+	}
+
+	@Test
+	public void testByteSourceIntoPackedDestination() throws Exception {
+		BufferedImage flower = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		ResampleOp resampleOp = new ResampleOp(91, 67);
+		BufferedImage dest = new BufferedImage(91, 67, BufferedImage.TYPE_INT_RGB);
+		assertSame(dest, resampleOp.filter(flower, dest));
+		assertSameRGB(resampleOp.filter(flower, null), dest);
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+import static org.junit.Assert.*;
+
+public class PartitioningTest {
+
+	private static byte[] resize(BufferedImage image, int width, int height, ResampleOp.Partitioning partitioning,
+								 int threads, boolean fixedPoint){
+		ResampleOp resampleOp = new ResampleOp(width, height);
+		resampleOp.setPartitioning(partitioning);
+		resampleOp.setNumberOfThreads(threads);
+		resampleOp.setFixedPointArithmetic(fixedPoint);
+		BufferedImage result = resampleOp.filter(image, null);
+		return ((DataBufferByte) result.getRaster().getDataBuffer()).getData();
+	}
+
+	private static void assertSameResult(BufferedImage image, int width, int height){
+		for (boolean fixedPoint : new boolean[]{false, true}) {
+			byte[] expected = resize(image, width, height, ResampleOp.Partitioning.Interleaved, 1, fixedPoint);
+			for (int threads = 1; threads <= 7; threads += 2) {
+				assertArrayEquals(expected, resize(image, width, height, ResampleOp.Partitioning.Interleaved, threads, fixedPoint));
+				assertArrayEquals(expected, resize(image, width, height, ResampleOp.Partitioning.Contiguous, threads, fixedPoint));
+			}
+		}
+	}
+
+	@Test
+	public void testDownscale() throws Exception {
+		BufferedImage image = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		assertSameResult(image, 101, 67);
+	}
+
+	@Test
+	public void testRowsWiderThanColumnTile() throws Exception {
+		BufferedImage image = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		assertTrue(1000 * 3 > ResampleOp.COLUMN_TILE_SIZE);
+		assertSameResult(image, 1000, 5);
+	}
+
+	@Test
+	public void testFewerRowsThanThreads() throws Exception {
+		BufferedImage image = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		BufferedImage small = new ResampleOp(20, 4).filter(image, null);
+		assertSameResult(small, 30, 3);
+	}
+
+	@Test
+	public void testLongAccumulatorsNotKept() {
+		final int max = ResampleOp.MAX_THREAD_ACCUMULATOR_LENGTH;
+		assertSame(ResampleOp.floatAccumulator(max), ResampleOp.floatAccumulator(100));
+		assertSame(ResampleOp.intAccumulator(max), ResampleOp.intAccumulator(100));
+		assertEquals(max + 1, ResampleOp.floatAccumulator(max + 1).length);
+		assertNotSame(ResampleOp.floatAccumulator(max + 1), ResampleOp.floatAccumulator(max + 1));
+		assertNotSame(ResampleOp.intAccumulator(max + 1), ResampleOp.intAccumulator(max + 1));
+		// the kept accumulators are not replaced by the longer ones
+		assertEquals(max, ResampleOp.floatAccumulator(1).length);
+		assertEquals(max, ResampleOp.intAccumulator(1).length);
+	}
+}
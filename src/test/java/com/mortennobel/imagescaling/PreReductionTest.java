@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class PreReductionTest {
+	private static final int[] TYPES = {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+			BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_BGR,
+			BufferedImage.TYPE_INT_ARGB};
+
+	@Test
+	public void testFactor(){
+		assertEquals(1, ResampleOp.preReductionFactor(300, 100));
+		assertEquals(2, ResampleOp.preReductionFactor(400, 100));
+		assertEquals(2, ResampleOp.preReductionFactor(599, 100));
+		assertEquals(10, ResampleOp.preReductionFactor(2000, 100));
+		assertEquals(1, ResampleOp.preReductionFactor(100, 400));
+	}
+
+	@Test
+	public void testBoxReduction(){
+		BufferedImage image = new BufferedImage(5, 3, BufferedImage.TYPE_BYTE_GRAY);
+		for (int y = 0; y < 3; y++) {
+			for (int x = 0; x < 5; x++) {
+				image.getRaster().setSample(x, y, 0, 10 * x + y);
+			}
+		}
+		BoxReduction reduction = new BoxReduction(image, 1, 2, 2, false);
+		assertEquals(3, reduction.width);
+		assertEquals(2, reduction.height);
+		byte[] pixels = new byte[6];
+		reduction.reduceRows(pixels, 0, 2, 1);
+		// the last column and row are partial blocks
+		assertArrayEquals(new byte[]{6, 26, 41, 7, 27, 42}, pixels);
+	}
+
+	@Test
+	public void testUniformColorUnchanged(){
+		for (int type : TYPES) {
+			BufferedImage image = new BufferedImage(371, 293, type);
+			for (int y = 0; y < image.getHeight(); y++) {
+				for (int x = 0; x < image.getWidth(); x++) {
+					image.setRGB(x, y, 0x80c86432);
+				}
+			}
+			for (boolean linearLight : new boolean[]{false, true}) {
+				ResampleOp resampleOp = new ResampleOp(31, 23);
+				resampleOp.setPreReduction(true);
+				resampleOp.setLinearLight(linearLight);
+				BufferedImage result = resampleOp.filter(image, null);
+				for (int y = 0; y < 23; y++) {
+					for (int x = 0; x < 31; x++) {
+						assertEquals(ImageUtils.imageTypeName(image), image.getRGB(0, 0), result.getRGB(x, y));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCloseToDirectFilter() throws IOException {
+		BufferedImage flower = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		for (int type : TYPES) {
+			BufferedImage image = ImageUtils.convert(flower, type);
+			int dstWidth = image.getWidth() / 9;
+			int dstHeight = image.getHeight() / 7;
+			BufferedImage expected = new ResampleOp(dstWidth, dstHeight).filter(image, null);
+			ResampleOp resampleOp = new ResampleOp(dstWidth, dstHeight);
+			resampleOp.setPreReduction(true);
+			BufferedImage actual = resampleOp.filter(image, null);
+			assertEquals(expected.getType(), actual.getType());
+			long difference = 0;
+			for (int y = 0; y < dstHeight; y++) {
+				for (int x = 0; x < dstWidth; x++) {
+					int expectedRGB = expected.getRGB(x, y);
+					int actualRGB = actual.getRGB(x, y);
+					for (int shift = 0; shift < 32; shift += 8) {
+						difference += Math.abs(((expectedRGB >>> shift) & 0xff) - ((actualRGB >>> shift) & 0xff));
+					}
+				}
+			}
+			double meanDifference = difference / (4.0 * dstWidth * dstHeight);
+			assertTrue(ImageUtils.imageTypeName(image) + " " + meanDifference, meanDifference < 3);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ProgressReporterTest {
+	@Test
+	public void testThrottled() {
+		BufferedImage image = new BufferedImage(8, 5000, BufferedImage.TYPE_3BYTE_BGR);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			for (ExecutorService executor : new ExecutorService[]{null, pool}) {
+				for (int threads : new int[]{1, 4}) {
+					ResampleOp resampleOp = new ResampleOp(DimensionConstrain.createAbsolutionDimension(4, 2500),
+							executor);
+					resampleOp.setNumberOfThreads(threads);
+					List<Float> fractions = new ArrayList<>();
+					resampleOp.addProgressListener(fractions::add);
+					resampleOp.filter(image, null);
+					// about one per percent, plus the end of the two passes
+					assertTrue(fractions.toString(), fractions.size() <= 1 / ProgressReporter.MIN_FRACTION_DELTA + 3);
+					if (threads == 1){
+						// with more threads the first report includes the rows the others have done meanwhile
+						assertTrue(fractions.toString(), fractions.get(0) < ProgressReporter.MIN_FRACTION_DELTA);
+					}
+					float last = 0;
+					for (float fraction : fractions) {
+						assertTrue(fraction > last);
+						assertTrue(fraction <= 1f);
+						last = fraction;
+					}
+					assertEquals(1f, last, 0f);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testLastRowsOfOtherThread() {
+		List<Float> fractions = new ArrayList<>();
+		ResampleOp resampleOp = new ResampleOp(10, 10);
+		resampleOp.addProgressListener(fractions::add);
+		ProgressReporter reporter = new ProgressReporter(resampleOp, 1000);
+		for (int i = 0; i < 500; i++) {
+			reporter.itemProcessed(true);
+		}
+		for (int i = 0; i < 500; i++) {
+			reporter.itemProcessed(false);
+		}
+		assertEquals(0.5f, fractions.get(fractions.size() - 1), ProgressReporter.MIN_FRACTION_DELTA);
+		reporter.flush();
+		assertEquals(1f, fractions.get(fractions.size() - 1), 0f);
+		int notifications = fractions.size();
+		reporter.flush();
+		assertEquals(notifications, fractions.size());
+	}
+
+	@Test
+	public void testConcurrentCount() throws InterruptedException {
+		final List<Float> fractions = new ArrayList<>();
+		ResampleOp resampleOp = new ResampleOp(10, 10);
+		resampleOp.addProgressListener(fractions::add);
+		final ProgressReporter reporter = new ProgressReporter(resampleOp, 40000);
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			Thread thread = new Thread(() -> {
+				for (int j = 0; j < 10000; j++) {
+					reporter.itemProcessed(false);
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(fractions.isEmpty());
+		for (int j = 0; j < 10000; j++) {
+			reporter.itemProcessed(true);
+		}
+		assertEquals(1f, fractions.get(fractions.size() - 1), 0f);
+		assertEquals(26, fractions.size());
+	}
+
+	@Test
+	public void testNoListener() {
+		ResampleOp resampleOp = new ResampleOp(10, 10);
+		assertFalse(resampleOp.hasProgressListeners());
+		ProgressListener listener = fraction -> {};
+		resampleOp.addProgressListener(listener);
+		assertTrue(resampleOp.hasProgressListeners());
+		resampleOp.removeProgressListener(listener);
+		assertFalse(resampleOp.hasProgressListeners());
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class ResampleOpConcurrencyTest {
+
+	private static void assertSamePixels(BufferedImage expected, BufferedImage actual){
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+			}
+		}
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+		BufferedImage image = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		ResampleOp resampleOp = new ResampleOp(120, 90);
+		resampleOp.setNumberOfThreads(3);
+		BufferedImage first = resampleOp.filter(image, null);
+		BufferedImage second = resampleOp.filter(image, null);
+		assertSamePixels(first, second);
+	}
+
+	@Test
+	public void testConcurrentInvocations() throws Exception {
+		BufferedImage image = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		final List<BufferedImage> sources = new ArrayList<>();
+		final List<BufferedImage> expected = new ArrayList<>();
+		final ResampleOp resampleOp = new ResampleOp(DimensionConstrain.createRelativeDimension(0.3f));
+		resampleOp.setNumberOfThreads(2);
+		for (int i = 0; i < 8; i++) {
+			BufferedImage source = image.getSubimage(i * 10, i * 7, image.getWidth() - i * 30, image.getHeight() - i * 20);
+			sources.add(source);
+			expected.add(new ResampleOp(DimensionConstrain.createRelativeDimension(0.3f)).filter(source, null));
+		}
+
+		ExecutorService requestThreads = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<BufferedImage>> results = new ArrayList<>();
+			for (int round = 0; round < 4; round++) {
+				for (final BufferedImage source : sources) {
+					results.add(requestThreads.submit(new Callable<BufferedImage>() {
+						public BufferedImage call() {
+							return resampleOp.filter(source, null);
+						}
+					}));
+				}
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertSamePixels(expected.get(i % sources.size()), results.get(i).get());
+			}
+		} finally {
+			requestThreads.shutdown();
+		}
+	}
+}
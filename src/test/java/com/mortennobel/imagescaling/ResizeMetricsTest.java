@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ResizeMetricsTest {
+	private static BufferedImage readImage() throws IOException {
+		return ImageIO.read(ResizeMetricsTest.class.getResource("/com/mortennobel/imagescaling/flower.jpg"));
+	}
+
+	@Test
+	public void testResampleOpPhases() throws IOException {
+		BufferedImage image = readImage();
+		ResampleOp resampleOp = new ResampleOp(120, 90);
+		resampleOp.setNumberOfThreads(2);
+		List<ResizeMetrics> received = new ArrayList<>();
+		resampleOp.addMetricsListener(received::add);
+		resampleOp.filter(image, null);
+		assertEquals(1, received.size());
+		ResizeMetrics metrics = received.get(0);
+		assertEquals("ResampleOp", metrics.getOperation());
+		assertEquals((long) image.getWidth() * image.getHeight(), metrics.getSourcePixels());
+		assertEquals(120 * 90, metrics.getDestinationPixels());
+		assertEquals(3, metrics.getNrChannels());
+		assertEquals(2, metrics.getThreads());
+		assertTrue(metrics.getPhaseNanos(ResizeMetrics.Phase.Horizontal) > 0);
+		assertTrue(metrics.getPhaseNanos(ResizeMetrics.Phase.Vertical) > 0);
+		assertEquals(0, metrics.getPhaseNanos(ResizeMetrics.Phase.Sharpen));
+		assertEquals(0, metrics.getPhaseNanos(ResizeMetrics.Phase.PreReduction));
+		long phases = 0;
+		for (ResizeMetrics.Phase phase : ResizeMetrics.Phase.values()) {
+			phases += metrics.getPhaseNanos(phase);
+		}
+		assertTrue(metrics.getTotalNanos() >= phases);
+		assertNull(ResizeMetrics.current());
+	}
+
+	@Test
+	public void testOptionalPhases() throws IOException {
+		BufferedImage image = ImageUtils.convert(readImage(), BufferedImage.TYPE_BYTE_INDEXED);
+		ResampleOp resampleOp = new ResampleOp(60, 45);
+		resampleOp.setPreReduction(true);
+		resampleOp.setUnsharpenMask(AdvancedResizeOp.UnsharpenMask.Normal);
+		List<ResizeMetrics> received = new ArrayList<>();
+		resampleOp.addMetricsListener(received::add);
+		resampleOp.filter(image, null);
+		ResizeMetrics metrics = received.get(0);
+		assertTrue(metrics.getPhaseNanos(ResizeMetrics.Phase.Conversion) > 0);
+		assertTrue(metrics.getPhaseNanos(ResizeMetrics.Phase.PreReduction) > 0);
+		assertTrue(metrics.getPhaseNanos(ResizeMetrics.Phase.Sharpen) > 0);
+		assertTrue(metrics.getPhaseNanos(ResizeMetrics.Phase.Store) > 0);
+	}
+
+	@Test
+	public void testRemoveListener() throws IOException {
+		ResampleOp resampleOp = new ResampleOp(60, 45);
+		HistogramMetricsListener histogram = new HistogramMetricsListener();
+		resampleOp.addMetricsListener(histogram);
+		assertTrue(resampleOp.removeMetricsListener(histogram));
+		resampleOp.filter(readImage(), null);
+		assertEquals(0, histogram.getCount());
+	}
+
+	@Test
+	public void testOtherOps() throws IOException {
+		BufferedImage image = readImage();
+		for (AdvancedResizeOp op : new AdvancedResizeOp[]{new ThumbnailRescaleOp(50, 50), new MultiStepRescaleOp(50, 50),
+				new StreamingResampleOp(50, 50), new AutoResizeOp(50, 50)}) {
+			op.setUnsharpenMask(AdvancedResizeOp.UnsharpenMask.Soft);
+			HistogramMetricsListener histogram = new HistogramMetricsListener();
+			op.addMetricsListener(histogram);
+			op.filter(image, null);
+			op.filter(image, null);
+			assertEquals(2, histogram.getCount());
+			assertEquals(op.getClass().getSimpleName(), histogram.getSlowest().getOperation());
+			assertTrue(histogram.getTotalNanos(ResizeMetrics.Phase.Sharpen) > 0);
+			assertTrue(histogram.getPercentileNanos(100) >= histogram.getSlowest().getTotalNanos());
+			assertEquals(2L * image.getWidth() * image.getHeight(), histogram.getSourcePixels());
+		}
+	}
+
+	@Test
+	public void testMultiResampleOp() throws IOException {
+		BufferedImage image = readImage();
+		MultiResampleOp multiResampleOp = new MultiResampleOp(Arrays.asList(
+				DimensionConstrain.createAbsolutionDimension(120, 90), DimensionConstrain.createAbsolutionDimension(60, 45)));
+		multiResampleOp.setUnsharpenMask(AdvancedResizeOp.UnsharpenMask.Soft);
+		List<ResizeMetrics> received = new ArrayList<>();
+		multiResampleOp.addMetricsListener(received::add);
+		multiResampleOp.filterAll(image);
+		assertEquals(1, received.size());
+		ResizeMetrics metrics = received.get(0);
+		assertEquals("MultiResampleOp", metrics.getOperation());
+		assertEquals(120 * 90, metrics.getDestinationPixels());
+		assertTrue(metrics.getPhaseNanos(ResizeMetrics.Phase.Horizontal) > 0);
+		assertTrue(metrics.getPhaseNanos(ResizeMetrics.Phase.Vertical) > 0);
+		assertTrue(metrics.getPhaseNanos(ResizeMetrics.Phase.Sharpen) > 0);
+		assertNull(ResizeMetrics.current());
+	}
+
+	@Test
+	public void testHistogram(){
+		for (long value : new long[]{0, 1, 7, 8, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE}) {
+			int bucket = HistogramMetricsListener.bucket(value);
+			assertTrue(value <= HistogramMetricsListener.bucketUpperBound(bucket));
+			assertTrue(bucket == 0 || value > HistogramMetricsListener.bucketUpperBound(bucket - 1));
+			assertTrue(HistogramMetricsListener.bucketUpperBound(bucket) - value <= value / 8);
+		}
+
+		HistogramMetricsListener histogram = new HistogramMetricsListener();
+		for (int i = 1; i <= 100; i++) {
+			ResizeMetrics metrics = new ResizeMetrics("test", 10, 10, 5, 5, 3);
+			metrics.lap(ResizeMetrics.Phase.Horizontal, System.nanoTime() - i * 1000000L);
+			metrics.finish();
+			histogram.notifyMetrics(metrics);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(50000000, histogram.getPercentileNanos(ResizeMetrics.Phase.Horizontal, 50), 50000000 / 8);
+		assertEquals(99000000, histogram.getPercentileNanos(ResizeMetrics.Phase.Horizontal, 99), 99000000 / 8);
+		assertEquals(0, histogram.getPercentileNanos(ResizeMetrics.Phase.Vertical, 99));
+		assertEquals(100L * 100, histogram.getSourcePixels());
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import com.mortennobel.imagescaling.threads.SharedResampleExecutor;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SharedResampleExecutorTest {
+	@Test
+	public void testDefaultOpsShareExecutor(){
+		ResampleOp first = new ResampleOp(40, 30);
+		ResampleOp second = new ResampleOp(DimensionConstrain.createMaxDimension(40, 40));
+		assertSame(first.getExecutorService(), second.getExecutorService());
+		assertSame(SharedResampleExecutor.get(), first.getExecutorService());
+	}
+
+	@Test
+	public void testRecreatedAfterShutdown() throws Exception {
+		ExecutorService executor = SharedResampleExecutor.get();
+		SharedResampleExecutor.shutdown();
+		assertTrue(SharedResampleExecutor.awaitTermination(10, TimeUnit.SECONDS));
+		assertTrue(executor.isTerminated());
+
+		ResampleOp resampleOp = new ResampleOp(40, 30);
+		resampleOp.setNumberOfThreads(4);
+		BufferedImage result = resampleOp.filter(new BufferedImage(200, 150, BufferedImage.TYPE_3BYTE_BGR), null);
+		assertEquals(40, result.getWidth());
+		assertNotSame(executor, resampleOp.getExecutorService());
+		assertFalse(resampleOp.getExecutorService().isShutdown());
+	}
+}
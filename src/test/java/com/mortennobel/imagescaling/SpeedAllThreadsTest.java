@@ -0,0 +1,14 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.mortennobel.imagescaling;
+
+public class SpeedAllThreadsTest extends SpeedSingleThreadTest {
+	public int getNumberOfThreads() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+}
@@ -0,0 +1,18 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+
+package com.mortennobel.imagescaling;
+
+/**
+ * Runs the speed test with all processors using the interleaved partitioning, to compare with
+ * {@link SpeedAllThreadsTest} which uses the default contiguous partitioning.
+ */
+public class SpeedInterleavedPartitioningTest extends SpeedAllThreadsTest {
+	public ResampleOp.Partitioning getPartitioning() {
+		return ResampleOp.Partitioning.Interleaved;
+	}
+}
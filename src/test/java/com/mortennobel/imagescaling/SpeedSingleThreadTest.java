@@ -25,6 +25,10 @@ public class SpeedSingleThreadTest extends TestCase {
 		return 1;
 	}
 
+	public ResampleOp.Partitioning getPartitioning(){
+		return ResampleOp.Partitioning.Contiguous;
+	}
+
 	@Override
     protected void setUp() throws Exception {
 		super.setUp();
@@ -34,6 +38,7 @@ public class SpeedSingleThreadTest extends TestCase {
 	protected void doRescale(final ResampleFilter filter) throws Exception{
 		final ResampleOp resampleOp = new ResampleOp(200,200);
 		resampleOp.setNumberOfThreads(getNumberOfThreads());
+		resampleOp.setPartitioning(getPartitioning());
 		resampleOp.setFilter(filter);
 		resampleOp.filter(this.image, null);
 	}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class StreamingResampleOpTest {
+
+	private static byte[] data(BufferedImage image){
+		return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+	}
+
+	private static void assertSameAsResampleOp(BufferedImage image, int width, int height, ResampleFilter filter,
+											   int threads, boolean fixedPoint){
+		ResampleOp resampleOp = new ResampleOp(width, height);
+		resampleOp.setFilter(filter);
+		resampleOp.setFixedPointArithmetic(fixedPoint);
+		StreamingResampleOp streamingResampleOp = new StreamingResampleOp(width, height);
+		streamingResampleOp.setFilter(filter);
+		streamingResampleOp.setNumberOfThreads(threads);
+		streamingResampleOp.setFixedPointArithmetic(fixedPoint);
+		assertArrayEquals(data(resampleOp.filter(image, null)), data(streamingResampleOp.filter(image, null)));
+	}
+
+	@Test
+	public void testSameAsResampleOp() throws Exception {
+		BufferedImage image = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		ResampleFilter[] filters = {ResampleFilters.getLanczos3Filter(), ResampleFilters.getBoxFilter(),
+				ResampleFilters.getMitchellFilter()};
+		for (ResampleFilter filter : filters) {
+			for (int threads = 1; threads <= 4; threads++) {
+				assertSameAsResampleOp(image, 97, 61, filter, threads, false);
+				assertSameAsResampleOp(image, 97, 61, filter, threads, true);
+				assertSameAsResampleOp(image, image.getWidth() * 2, image.getHeight() * 3 / 2, filter, threads, false);
+			}
+		}
+	}
+
+	@Test
+	public void testGrayAndAlpha() throws Exception {
+		BufferedImage image = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		BufferedImage gray = ImageUtils.convert(image, BufferedImage.TYPE_BYTE_GRAY);
+		BufferedImage alpha = ImageUtils.convert(image, BufferedImage.TYPE_4BYTE_ABGR);
+		assertSameAsResampleOp(gray, 50, 40, ResampleFilters.getLanczos3Filter(), 3, false);
+		assertSameAsResampleOp(alpha, 50, 40, ResampleFilters.getLanczos3Filter(), 3, false);
+	}
+
+	@Test
+	public void testForkJoinPool() throws Exception {
+		BufferedImage image = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			StreamingResampleOp streamingResampleOp = new StreamingResampleOp(300, 200, pool);
+			assertArrayEquals(data(new ResampleOp(300, 200).filter(image, null)),
+					data(streamingResampleOp.filter(image, null)));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testWindowHeight(){
+		// downscaling by 10 with lanczos 3 depends on less than 6 * 10 source rows, the outermost weights are zero
+		int windowHeight = StreamingResampleOp.getWindowHeight(
+				ResampleOp.createSubSampling(ResampleFilters.getLanczos3Filter(), 1000, 100));
+		assertTrue(windowHeight >= 55 && windowHeight <= 60);
+		windowHeight = StreamingResampleOp.getWindowHeight(
+				ResampleOp.createSubSampling(ResampleFilters.getLanczos3Filter(), 100, 1000));
+		assertTrue(windowHeight <= 7);
+	}
+}
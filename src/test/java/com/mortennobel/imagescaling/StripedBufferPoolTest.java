@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class StripedBufferPoolTest {
+	@Test
+	public void testSizeClasses(){
+		StripedBufferPool pool = new StripedBufferPool(1 << 20);
+		assertEquals(4096, pool.borrow(1).length);
+		assertEquals(4096, pool.borrow(4096).length);
+		assertEquals(8192, pool.borrow(4097).length);
+		assertEquals(1 << 18, pool.borrow((1 << 18) - 1).length);
+		assertEquals(4, pool.getMissCount());
+	}
+
+	@Test
+	public void testReused(){
+		StripedBufferPool pool = new StripedBufferPool(1 << 20);
+		byte[] buffer = pool.borrow(5000);
+		pool.release(buffer);
+		assertEquals(buffer.length, pool.getPooledBytes());
+		assertSame(buffer, pool.borrow(6000));
+		assertEquals(0, pool.getPooledBytes());
+		assertNotSame(buffer, pool.borrow(6000));
+		assertEquals(1, pool.getHitCount());
+		assertEquals(2, pool.getMissCount());
+	}
+
+	@Test
+	public void testMaxBytes(){
+		StripedBufferPool pool = new StripedBufferPool(10000);
+		byte[] first = pool.borrow(8192);
+		byte[] second = pool.borrow(8192);
+		pool.release(first);
+		pool.release(second); // exceeds the maximum
+		assertEquals(8192, pool.getPooledBytes());
+		assertSame(first, pool.borrow(8192));
+		pool.release(new byte[5000]); // not from a pool
+		assertEquals(0, pool.getPooledBytes());
+		pool.release(first);
+		pool.clear();
+		assertEquals(0, pool.getPooledBytes());
+		assertNotSame(first, pool.borrow(8192));
+	}
+
+	@Test
+	public void testLargerThanMaxBytesNotRounded(){
+		StripedBufferPool pool = new StripedBufferPool(10000);
+		assertEquals(16385, pool.borrow(16385).length);
+		byte[] buffer = pool.borrow(10001);
+		assertEquals(10001, buffer.length);
+		pool.release(buffer);
+		assertEquals(0, pool.getPooledBytes());
+		assertEquals(8192, pool.borrow(5000).length);
+	}
+
+	@Test
+	public void testDisabled(){
+		StripedBufferPool pool = new StripedBufferPool(0);
+		byte[] buffer = pool.borrow(5000);
+		assertEquals(5000, buffer.length);
+		pool.release(buffer);
+		assertNotSame(buffer, pool.borrow(5000));
+		assertEquals(0, pool.getHitCount());
+	}
+
+	@Test
+	public void testUsedByResampleOp() throws IOException {
+		BufferedImage image = ImageIO.read(getClass().getResource("/com/mortennobel/imagescaling/flower.jpg"));
+		for (Class<? extends ResampleOp> type : new Class[]{ResampleOp.class, StreamingResampleOp.class}) {
+			StripedBufferPool pool = new StripedBufferPool(StripedBufferPool.DEFAULT_MAX_BYTES);
+			ResampleOp op = type == ResampleOp.class ? new ResampleOp(150, 100) : new StreamingResampleOp(150, 100);
+			op.setUnsharpenMask(AdvancedResizeOp.UnsharpenMask.Normal);
+			op.setBufferPool(pool);
+			BufferedImage expected = op.filter(image, null);
+			long misses = pool.getMissCount();
+			for (int i = 0; i < 3; i++) {
+				BufferedImage result = op.filter(image, null);
+				for (int y = 0; y < result.getHeight(); y++) {
+					for (int x = 0; x < result.getWidth(); x++) {
+						assertEquals(expected.getRGB(x, y), result.getRGB(x, y));
+					}
+				}
+			}
+			assertEquals(type.getSimpleName(), misses, pool.getMissCount());
+			assertTrue(pool.getHitCount() > 0);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullPool(){
+		new ResampleOp(10, 10).setBufferPool(null);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SubSamplingCacheTest {
+	@Test
+	public void testHitAndMiss(){
+		SubSamplingCache cache = new SubSamplingCache(4);
+		ResampleOp.SubSamplingData data = cache.get(ResampleFilters.getLanczos3Filter(), 100, 30);
+		assertSame(data, cache.get(ResampleFilters.getLanczos3Filter(), 100, 30));
+		assertNotSame(data, cache.get(ResampleFilters.getMitchellFilter(), 100, 30));
+		assertNotSame(data, cache.get(ResampleFilters.getLanczos3Filter(), 30, 100));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void testSameAsComputed(){
+		SubSamplingCache cache = new SubSamplingCache(4);
+		ResampleOp.SubSamplingData cached = cache.get(ResampleFilters.getLanczos3Filter(), 123, 45);
+		ResampleOp.SubSamplingData computed = ResampleOp.createSubSampling(ResampleFilters.getLanczos3Filter(), 123, 45);
+		assertEquals(computed.getNumContributors(), cached.getNumContributors());
+		assertTrue(Arrays.equals(computed.getArrN(), cached.getArrN()));
+		assertTrue(Arrays.equals(computed.getArrPixel(), cached.getArrPixel()));
+		assertTrue(Arrays.equals(computed.getArrWeight(), cached.getArrWeight()));
+	}
+
+	@Test
+	public void testCachedDataCannotBeChanged(){
+		SubSamplingCache cache = new SubSamplingCache(4);
+		ResampleOp.SubSamplingData data = cache.get(ResampleFilters.getLanczos3Filter(), 100, 30);
+		float[] weights = data.getArrWeight();
+		Arrays.fill(data.getArrWeight(), 0f);
+		Arrays.fill(data.getArrPixel(), -1);
+		assertTrue(Arrays.equals(weights, cache.get(ResampleFilters.getLanczos3Filter(), 100, 30).getArrWeight()));
+		assertTrue(Arrays.equals(ResampleOp.createSubSampling(ResampleFilters.getLanczos3Filter(), 100, 30).getArrPixel(),
+				data.getArrPixel()));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted(){
+		SubSamplingCache cache = new SubSamplingCache(2);
+		ResampleFilter filter = ResampleFilters.getTriangleFilter();
+		ResampleOp.SubSamplingData first = cache.get(filter, 10, 5);
+		ResampleOp.SubSamplingData second = cache.get(filter, 10, 6);
+		assertSame(first, cache.get(filter, 10, 5)); // second is now the least recently used
+		cache.get(filter, 10, 7);
+		assertEquals(2, cache.size());
+		assertSame(first, cache.get(filter, 10, 5));
+		assertNotSame(second, cache.get(filter, 10, 6));
+	}
+
+	@Test
+	public void testDisabled(){
+		SubSamplingCache cache = new SubSamplingCache(0);
+		assertNotSame(cache.get(ResampleFilters.getBoxFilter(), 10, 5), cache.get(ResampleFilters.getBoxFilter(), 10, 5));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testUsedByResampleOp(){
+		SubSamplingCache cache = new SubSamplingCache(8);
+		BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR);
+		for (int i = 0; i < 3; i++) {
+			ResampleOp resampleOp = new ResampleOp(20, 10);
+			resampleOp.setSubSamplingCache(cache);
+			resampleOp.filter(image, null);
+		}
+		assertEquals(2, cache.getMissCount());
+		assertEquals(4, cache.getHitCount());
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class SubsampledReadTest {
+
+	@Test
+	public void testSourceSubsampling(){
+		assertEquals(15, ImageUtils.getSourceSubsampling(6000, 4000, 200, 133));
+		assertEquals(10, ImageUtils.getSourceSubsampling(6000, 4000, 200, 200));
+		assertEquals(1, ImageUtils.getSourceSubsampling(1000, 1000, 300, 300));
+		assertEquals(1, ImageUtils.getSourceSubsampling(100, 100, 400, 400));
+	}
+
+	@Test
+	public void testDecodedSizeAboveTwiceDestination() throws IOException {
+		final byte[] png = encode(createImage(1001, 777), "png");
+		for (int dst = 1; dst < 300; dst += 7) {
+			final ImageReader reader = createReader(png);
+			final BufferedImage decoded = ImageUtils.readSubsampled(reader, dst, dst);
+			reader.dispose();
+			assertTrue(decoded.getWidth() >= Math.min(1001, 2 * dst));
+			assertTrue(decoded.getHeight() >= Math.min(777, 2 * dst));
+			final int subsampling = ImageUtils.getSourceSubsampling(1001, 777, dst, dst);
+			assertEquals((1001 + subsampling - 1) / subsampling, decoded.getWidth());
+		}
+	}
+
+	@Test
+	public void testSameAsFullDecode() throws IOException {
+		final BufferedImage image = createImage(1600, 1200);
+		final byte[] png = encode(image, "png");
+		final ResampleOp resampleOp = new ResampleOp(DimensionConstrain.createMaxDimension(160, 160));
+		final BufferedImage expected = resampleOp.filter(image, null);
+		final ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(png));
+		final BufferedImage actual = resampleOp.filter(input);
+		input.close();
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				final int e = expected.getRGB(x, y);
+				final int a = actual.getRGB(x, y);
+				for (int shift = 0; shift < 24; shift += 8) {
+					assertEquals((e >> shift) & 0xff, (a >> shift) & 0xff, 3);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnknownFormat() throws IOException {
+		final ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(new byte[100]));
+		new ResampleOp(10, 10).filter(input);
+	}
+
+	private static ImageReader createReader(byte[] encoded) throws IOException {
+		final ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(encoded));
+		final ImageReader reader = ImageIO.getImageReaders(input).next();
+		reader.setInput(input);
+		return reader;
+	}
+
+	private static byte[] encode(BufferedImage image, String format) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, format, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return an image with smooth gradients, which point sampling does not alias
+	 */
+	private static BufferedImage createImage(int width, int height) {
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				final int red = x * 255 / width;
+				final int green = y * 255 / height;
+				final int blue = (int) (127.5 + 127.5 * Math.sin(x / 90.0) * Math.cos(y / 70.0));
+				image.setRGB(x, y, red << 16 | green << 8 | blue);
+			}
+		}
+		return image;
+	}
+}
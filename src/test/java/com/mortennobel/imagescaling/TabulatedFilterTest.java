@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TabulatedFilterTest {
+	private final ResampleFilter[][] filters = {
+			{ResampleFilters.getBellFilter(), ResampleFilters.getTabulatedBellFilter()},
+			{ResampleFilters.getBiCubicFilter(), ResampleFilters.getTabulatedBiCubicFilter()},
+			{ResampleFilters.getBiCubicHighFreqResponse(), ResampleFilters.getTabulatedBiCubicHighFreqResponse()},
+			{ResampleFilters.getBSplineFilter(), ResampleFilters.getTabulatedBSplineFilter()},
+			{ResampleFilters.getHermiteFilter(), ResampleFilters.getTabulatedHermiteFilter()},
+			{ResampleFilters.getLanczos3Filter(), ResampleFilters.getTabulatedLanczos3Filter()},
+			{ResampleFilters.getMitchellFilter(), ResampleFilters.getTabulatedMitchellFilter()},
+			{ResampleFilters.getTriangleFilter(), ResampleFilters.getTabulatedTriangleFilter()},
+	};
+
+	@Test
+	public void testBuiltInFiltersWithinErrorBound(){
+		for (ResampleFilter[] pair : filters) {
+			final ResampleFilter filter = pair[0];
+			final ResampleFilter tabulated = pair[1];
+			assertEquals(filter.getSamplingRadius(), tabulated.getSamplingRadius(), 0f);
+			final float radius = filter.getSamplingRadius() + 0.5f;
+			for (float v = -radius; v <= radius; v += 0.0001f) {
+				assertEquals(filter.getName() + " at " + v, filter.apply(v), tabulated.apply(v), 1e-5f);
+			}
+		}
+	}
+
+	@Test
+	public void testResolution(){
+		final ResampleFilter filter = ResampleFilters.getLanczos3Filter();
+		final ResampleFilter coarse = ResampleFilters.tabulate(filter, 16);
+		float maxError = 0;
+		for (float v = -3f; v <= 3f; v += 0.001f) {
+			maxError = Math.max(maxError, Math.abs(filter.apply(v) - coarse.apply(v)));
+		}
+		assertTrue("Error " + maxError, maxError > 1e-6f && maxError < 0.01f);
+		assertEquals(filter.apply(0.5f), coarse.apply(0.5f), 1e-6f); // on the grid
+		assertEquals(0f, coarse.apply(Float.NaN), 0f);
+		assertEquals(0f, coarse.apply(-3.5f), 0f);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidResolution(){
+		ResampleFilters.tabulate(ResampleFilters.getLanczos3Filter(), 0);
+	}
+
+	@Test
+	public void testTabulateTabulatedFilter(){
+		final ResampleFilter tabulated = ResampleFilters.tabulate(ResampleFilters.getTabulatedMitchellFilter(), 8);
+		// the exact filter is tabulated again, not the table
+		assertEquals(tabulated.apply(0.3f),
+				ResampleFilters.tabulate(ResampleFilters.getMitchellFilter(), 8).apply(0.3f), 0f);
+		assertEquals(ResampleFilters.getMitchellFilter().getName() + " (tabulated)", tabulated.getName());
+	}
+
+	@Test
+	public void testResizeMatchesExactFilter(){
+		final BufferedImage source = new BufferedImage(301, 199, BufferedImage.TYPE_3BYTE_BGR);
+		final Random random = new Random(7);
+		for (int y = 0; y < source.getHeight(); y++) {
+			for (int x = 0; x < source.getWidth(); x++) {
+				source.setRGB(x, y, random.nextInt());
+			}
+		}
+		for (int[] size : new int[][]{{97, 61}, {640, 480}}) {
+			for (ResampleFilter[] pair : filters) {
+				final byte[] exact = resize(source, size, pair[0]);
+				final byte[] tabulated = resize(source, size, pair[1]);
+				for (int i = 0; i < exact.length; i++) {
+					assertEquals(pair[0].getName(), exact[i] & 0xff, tabulated[i] & 0xff, 1);
+				}
+			}
+		}
+	}
+
+	private static byte[] resize(BufferedImage source, int[] size, ResampleFilter filter) {
+		final ResampleOp resampleOp = new ResampleOp(size[0], size[1]);
+		resampleOp.setFilter(filter);
+		resampleOp.setUnsharpenMask(AdvancedResizeOp.UnsharpenMask.None);
+		final BufferedImage result = resampleOp.filter(source, null);
+		return ((DataBufferByte) result.getRaster().getDataBuffer()).getData();
+	}
+}
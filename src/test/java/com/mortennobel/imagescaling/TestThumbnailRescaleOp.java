@@ -144,5 +144,63 @@ public class TestThumbnailRescaleOp {
 
 	}
 
+	@Test
+	public void testDirectSameAsRGB() throws IOException {
+		BufferedImage flower = ImageIO.read(getClass().getResourceAsStream("flower.jpg"));
+		int[] types = {BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_4BYTE_ABGR_PRE,
+				BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_BGR,
+				BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE};
+		for (int type : types) {
+			BufferedImage source = ImageUtils.convert(flower, type).getSubimage(9, 5, 170, 130);
+			for (ThumbnailRescaleOp.Sampling sampling : ThumbnailRescaleOp.Sampling.values()) {
+				ThumbnailRescaleOp rescaleOp = new ThumbnailRescaleOp(41, 37);
+				rescaleOp.setSampling(sampling);
+				rescaleOp.setNumberOfThreads(3);
+				BufferedImage expected = sampleWithRGB(source, 41, 37, sampling);
+				BufferedImage target = new BufferedImage(60, 50, type);
+				BufferedImage dest = target.getSubimage(7, 3, 41, 37);
+				assertSame(dest, rescaleOp.filter(source, dest));
+				BufferedImage actual = rescaleOp.filter(source, null);
+				for (int y = 0; y < 37; y++) {
+					for (int x = 0; x < 41; x++) {
+						assertEquals(ImageUtils.imageTypeName(source), expected.getRGB(x, y), actual.getRGB(x, y));
+						int rgb = expected.getRGB(x, y);
+						BufferedImage pixel = new BufferedImage(1, 1, type);
+						pixel.setRGB(0, 0, rgb);
+						assertEquals(ImageUtils.imageTypeName(source), pixel.getRGB(0, 0), dest.getRGB(x, y));
+					}
+				}
+			}
+		}
+	}
 
+	/**
+	 * The samples taken by the op, read and written pixel by pixel.
+	 */
+	private static BufferedImage sampleWithRGB(BufferedImage src, int dstWidth, int dstHeight,
+											   ThumbnailRescaleOp.Sampling sampling) {
+		BufferedImage out = new BufferedImage(dstWidth, dstHeight,
+				ImageUtils.nrChannels(src) == 4 ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		float scaleX = src.getWidth() / (float) dstWidth;
+		float scaleY = src.getHeight() / (float) dstHeight;
+		float srcY = 0;
+		for (int dstY = 0; dstY < dstHeight; dstY++, srcY += scaleY) {
+			float srcX = 0;
+			for (int dstX = 0; dstX < dstWidth; dstX++, srcX += scaleX) {
+				int r = 0, g = 0, b = 0, a = 0;
+				for (float[] point : sampling.points) {
+					int x = Math.max(0, Math.min((int) (srcX + (point[0] * scaleX + 0.0001f)), src.getWidth() - 1));
+					int y = Math.max(0, Math.min((int) (srcY + (point[1] * scaleY + 0.0001f)), src.getHeight() - 1));
+					int rgb = src.getRGB(x, y);
+					a += rgb >>> 24;
+					r += (rgb >>> 16) & 0xff;
+					g += (rgb >>> 8) & 0xff;
+					b += rgb & 0xff;
+				}
+				int shift = sampling.rightshift;
+				out.setRGB(dstX, dstY, (a >> shift) << 24 | (r >> shift) << 16 | (g >> shift) << 8 | (b >> shift));
+			}
+		}
+		return out;
+	}
 }
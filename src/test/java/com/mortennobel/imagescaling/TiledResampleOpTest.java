@@ -0,0 +1,194 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TiledResampleOpTest {
+
+	@Test
+	public void testSameAsResampleOp() throws IOException {
+		for (int type : new int[]{BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_ARGB,
+				BufferedImage.TYPE_BYTE_GRAY}) {
+			final BufferedImage image = createImage(333, 251, type);
+			final byte[] png = encode(image, "png");
+			for (int bandHeight : new int[]{1, 7, 64, 1000}) {
+				for (int[] size : new int[][]{{200, 180}, {50, 40}, {500, 400}}) {
+					final TiledResampleOp tiledResampleOp = new TiledResampleOp(size[0], size[1]);
+					tiledResampleOp.setBandHeight(bandHeight);
+					final ResampleOp resampleOp = new ResampleOp(size[0], size[1]);
+					assertSameImage(read(resampleOp, png), read(tiledResampleOp, png));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSubsampledSameAsResampleOp() throws IOException {
+		final byte[] png = encode(createImage(900, 700, BufferedImage.TYPE_3BYTE_BGR), "png");
+		final TiledResampleOp tiledResampleOp = new TiledResampleOp(DimensionConstrain.createMaxDimension(60, 60));
+		tiledResampleOp.setBandHeight(16);
+		tiledResampleOp.setFixedPointArithmetic(true);
+		final ResampleOp resampleOp = new ResampleOp(DimensionConstrain.createMaxDimension(60, 60));
+		resampleOp.setFixedPointArithmetic(true);
+		// both decode with a source subsampling of 5
+		assertSameImage(read(resampleOp, png), read(tiledResampleOp, png));
+	}
+
+	@Test
+	public void testRowsInOrder() throws IOException {
+		final byte[] png = encode(createImage(400, 300, BufferedImage.TYPE_3BYTE_BGR), "png");
+		final TiledResampleOp tiledResampleOp = new TiledResampleOp(100, 75);
+		tiledResampleOp.setBandHeight(20);
+		final List<int[]> bands = new ArrayList<>();
+		final ImageReader reader = createReader(png);
+		tiledResampleOp.filter(reader, new TiledResampleOp.RowSink() {
+			public void begin(int width, int height, ImageTypeSpecifier type) {
+				assertEquals(100, width);
+				assertEquals(75, height);
+				assertEquals(BufferedImage.TYPE_3BYTE_BGR, type.getBufferedImageType());
+			}
+
+			public void writeRows(BufferedImage rows, int y) {
+				bands.add(new int[]{y, rows.getHeight()});
+			}
+
+			public void end() {
+				bands.add(null);
+			}
+		});
+		reader.dispose();
+		assertTrue(bands.size() > 2);
+		int y = 0;
+		for (int[] band : bands.subList(0, bands.size() - 1)) {
+			assertEquals(y, band[0]);
+			y += band[1];
+		}
+		assertEquals(75, y);
+		assertNull(bands.get(bands.size() - 1));
+	}
+
+	@Test
+	public void testWriter() throws IOException {
+		final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("tiff");
+		if (!writers.hasNext()){
+			return; // the TIFF plugin is part of Java 9 and later
+		}
+		final byte[] png = encode(createImage(640, 480, BufferedImage.TYPE_3BYTE_BGR), "png");
+		final TiledResampleOp tiledResampleOp = new TiledResampleOp(160, 120);
+		tiledResampleOp.setBandHeight(50);
+		final ImageWriter writer = writers.next();
+		final ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+		final ImageOutputStream output = ImageIO.createImageOutputStream(tiff);
+		writer.setOutput(output);
+		final ImageReader reader = createReader(png);
+		tiledResampleOp.filter(reader, writer);
+		reader.dispose();
+		writer.dispose();
+		output.close();
+
+		assertSameImage(read(new ResampleOp(160, 120), png), ImageIO.read(new ByteArrayInputStream(tiff.toByteArray())));
+	}
+
+	@Test
+	public void testMetrics() throws IOException {
+		final byte[] png = encode(createImage(400, 300, BufferedImage.TYPE_3BYTE_BGR), "png");
+		final TiledResampleOp tiledResampleOp = new TiledResampleOp(100, 75);
+		tiledResampleOp.setBandHeight(20);
+		final List<ResizeMetrics> received = new ArrayList<>();
+		tiledResampleOp.addMetricsListener(received::add);
+		read(tiledResampleOp, png);
+		tiledResampleOp.filter(createReader(png), new TiledResampleOp.RowSink() {
+			public void begin(int width, int height, ImageTypeSpecifier type) {
+			}
+
+			public void writeRows(BufferedImage rows, int y) {
+			}
+
+			public void end() {
+			}
+		});
+		assertEquals(2, received.size());
+		for (ResizeMetrics metrics : received) {
+			assertEquals("TiledResampleOp", metrics.getOperation());
+			// decoded with a source subsampling of 2
+			assertEquals(200 * 150, metrics.getSourcePixels());
+			assertEquals(100 * 75, metrics.getDestinationPixels());
+			assertEquals(3, metrics.getNrChannels());
+			assertTrue(metrics.getTotalNanos() > 0);
+		}
+		assertNull(ResizeMetrics.current());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnsharpenMaskNeedsImage() throws IOException {
+		final TiledResampleOp tiledResampleOp = new TiledResampleOp(10, 10);
+		tiledResampleOp.setUnsharpenMask(AdvancedResizeOp.UnsharpenMask.Normal);
+		tiledResampleOp.filter(createReader(encode(createImage(20, 20, BufferedImage.TYPE_3BYTE_BGR), "png")),
+				(TiledResampleOp.RowSink) null);
+	}
+
+	private static BufferedImage read(AdvancedResizeOp op, byte[] encoded) throws IOException {
+		final ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(encoded));
+		try {
+			return op.filter(input);
+		} finally {
+			input.close();
+		}
+	}
+
+	private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals(x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+			}
+		}
+	}
+
+	private static ImageReader createReader(byte[] encoded) throws IOException {
+		final ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(encoded));
+		final ImageReader reader = ImageIO.getImageReaders(input).next();
+		reader.setInput(input);
+		return reader;
+	}
+
+	private static byte[] encode(BufferedImage image, String format) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, format, out);
+		return out.toByteArray();
+	}
+
+	private static BufferedImage createImage(int width, int height, int type) {
+		final BufferedImage image = new BufferedImage(width, height, type);
+		final Random random = new Random(3);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, random.nextInt());
+			}
+		}
+		return image;
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import com.jhlabs.image.UnsharpFilter;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class UnsharpMaskTest {
+
+	private static BufferedImage jhlabs(BufferedImage image, AdvancedResizeOp.UnsharpenMask mask) {
+		UnsharpFilter unsharpFilter = new UnsharpFilter();
+		unsharpFilter.setRadius(2f);
+		unsharpFilter.setAmount(amount(mask));
+		unsharpFilter.setThreshold(10);
+		return unsharpFilter.filter(image, null);
+	}
+
+	private static float amount(AdvancedResizeOp.UnsharpenMask mask) {
+		switch (mask) {
+		case Soft: return 0.15f;
+		case Normal: return 0.3f;
+		case VerySharp: return 0.45f;
+		default: return 0.6f;
+		}
+	}
+
+	private static BufferedImage readImage() throws IOException {
+		return ImageIO.read(UnsharpMaskTest.class.getResource("/com/mortennobel/imagescaling/flower.jpg"));
+	}
+
+	private static void assertSameRGB(BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals("Pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+			}
+		}
+	}
+
+	@Test
+	public void testSameAsUnsharpFilter() throws IOException {
+		final BufferedImage image = readImage();
+		for (int type : new int[]{BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+				BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB}) {
+			for (AdvancedResizeOp.UnsharpenMask mask : new AdvancedResizeOp.UnsharpenMask[]{
+					AdvancedResizeOp.UnsharpenMask.Soft, AdvancedResizeOp.UnsharpenMask.Oversharpened}) {
+				final ResampleOp op = new ResampleOp(200, 150);
+				final BufferedImage resized = op.filter(ImageUtils.convert(image, type), null);
+				final BufferedImage expected = jhlabs(resized, mask);
+				op.setUnsharpenMask(mask);
+				assertSameRGB(expected, op.applyUnsharpenMask(resized));
+			}
+		}
+	}
+
+	@Test
+	public void testFusedSameAsSeparate() throws IOException {
+		final BufferedImage image = readImage();
+		for (int type : new int[]{BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_ARGB}) {
+			final BufferedImage source = ImageUtils.convert(image, type);
+			final ResampleOp op = new ResampleOp(DimensionConstrain.createMaxDimension(160, 160));
+			final BufferedImage expected = jhlabs(op.filter(source, null), AdvancedResizeOp.UnsharpenMask.Normal);
+			op.setUnsharpenMask(AdvancedResizeOp.UnsharpenMask.Normal);
+			assertSameRGB(expected, op.filter(source, null));
+
+			final StreamingResampleOp streamingOp = new StreamingResampleOp(DimensionConstrain.createMaxDimension(160, 160));
+			streamingOp.setUnsharpenMask(AdvancedResizeOp.UnsharpenMask.Normal);
+			assertSameRGB(expected, streamingOp.filter(source, null));
+		}
+	}
+
+	@Test
+	public void testDestinationSharpened() throws IOException {
+		final BufferedImage source = readImage();
+		final ResampleOp op = new ResampleOp(120, 90);
+		op.setUnsharpenMask(AdvancedResizeOp.UnsharpenMask.VerySharp);
+		final BufferedImage dest = new BufferedImage(120, 90, BufferedImage.TYPE_3BYTE_BGR);
+		assertSame(dest, op.filter(source, dest));
+		assertSameRGB(op.filter(source, null), dest);
+	}
+
+	@Test
+	public void testPremultipliedClampedToAlpha() {
+		final int width = 20;
+		final int height = 10;
+		final byte[] pixels = new byte[width * height * 4];
+		for (int i = 0; i < pixels.length; i += 4) {
+			final int x = (i / 4) % width;
+			final int value = x < width / 2 ? 20 : 128;
+			pixels[i] = pixels[i + 1] = pixels[i + 2] = (byte) value;
+			pixels[i + 3] = (byte) 128;
+		}
+		new UnsharpMask(0.6f, width, height, 4, true).apply(pixels);
+		boolean sharpened = false;
+		for (int i = 0; i < pixels.length; i += 4) {
+			assertEquals(128, pixels[i + 3] & 0xff);
+			assertTrue((pixels[i] & 0xff) <= 128);
+			sharpened |= (pixels[i] & 0xff) < 20;
+		}
+		assertTrue(sharpened);
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013, Morten Nobel-Joergensen
+ *
+ * License: The BSD 3-Clause License
+ * http://opensource.org/licenses/BSD-3-Clause
+ */
+package com.mortennobel.imagescaling;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class FlightRecorderEventsTest {
+	private static final String RESIZE = "com.mortennobel.imagescaling.Resize";
+	private static final String RESIZE_PHASE = "com.mortennobel.imagescaling.ResizePhase";
+
+	private static BufferedImage readImage() throws IOException {
+		return ImageIO.read(FlightRecorderEventsTest.class.getResource("/com/mortennobel/imagescaling/flower.jpg"));
+	}
+
+	private static List<RecordedEvent> record(AdvancedResizeOp op, BufferedImage image) throws IOException {
+		return record(() -> op.filter(image, null));
+	}
+
+	private static List<RecordedEvent> record(Runnable resize) throws IOException {
+		Path file = File.createTempFile("resize", ".jfr").toPath();
+		try (Recording recording = new Recording()) {
+			recording.enable(RESIZE).withoutThreshold();
+			recording.enable(RESIZE_PHASE).withoutThreshold();
+			recording.start();
+			resize.run();
+			recording.stop();
+			recording.dump(file);
+			return RecordingFile.readAllEvents(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testResampleOpEvents() throws IOException {
+		BufferedImage image = ImageUtils.convert(readImage(), BufferedImage.TYPE_BYTE_INDEXED);
+		ResampleOp resampleOp = new ResampleOp(60, 45);
+		resampleOp.setNumberOfThreads(2);
+		resampleOp.setPreReduction(true);
+		resampleOp.setUnsharpenMask(AdvancedResizeOp.UnsharpenMask.Normal);
+		Set<String> phases = new HashSet<>();
+		int resizes = 0;
+		for (RecordedEvent event : record(resampleOp, image)) {
+			String name = event.getEventType().getName();
+			if (!name.equals(RESIZE) && !name.equals(RESIZE_PHASE)){
+				continue;
+			}
+			assertEquals("ResampleOp", event.getString("operation"));
+			assertEquals(image.getWidth(), event.getInt("sourceWidth"));
+			assertEquals(image.getHeight(), event.getInt("sourceHeight"));
+			assertEquals(60, event.getInt("destinationWidth"));
+			assertEquals(45, event.getInt("destinationHeight"));
+			assertEquals("TYPE_BYTE_INDEXED", event.getString("imageType"));
+			assertEquals(resampleOp.getFilter().getName(), event.getString("filter"));
+			assertEquals(2, event.getInt("threads"));
+			if (name.equals(RESIZE)){
+				resizes++;
+			} else {
+				phases.add(event.getString("phase"));
+			}
+		}
+		assertEquals(1, resizes);
+		assertEquals(new HashSet<>(Arrays.asList("Conversion", "PreReduction", "Horizontal", "Vertical",
+				"Sharpen")), phases);
+	}
+
+	@Test
+	public void testAutoResizeOpEvents() throws IOException {
+		AutoResizeOp autoResizeOp = new AutoResizeOp(50, 50);
+		autoResizeOp.setQuality(AutoResizeOp.Quality.Fast);
+		autoResizeOp.setUnsharpenMask(AdvancedResizeOp.UnsharpenMask.Soft);
+		int resizes = 0;
+		int sharpens = 0;
+		for (RecordedEvent event : record(autoResizeOp, readImage())) {
+			if (event.getEventType().getName().equals(RESIZE)){
+				resizes++;
+				assertEquals("AutoResizeOp", event.getString("operation"));
+				assertTrue(event.getString("filter").startsWith("S_"));
+			} else if (event.getEventType().getName().equals(RESIZE_PHASE)){
+				assertEquals("Sharpen", event.getString("phase"));
+				sharpens++;
+			}
+		}
+		assertEquals(1, resizes);
+		assertEquals(1, sharpens);
+	}
+
+	@Test
+	public void testMultiResampleOpEvents() throws IOException {
+		BufferedImage image = readImage();
+		MultiResampleOp multiResampleOp = new MultiResampleOp(Arrays.asList(
+				DimensionConstrain.createAbsolutionDimension(120, 90), DimensionConstrain.createAbsolutionDimension(60, 45)));
+		int resizes = 0;
+		Set<String> phases = new HashSet<>();
+		for (RecordedEvent event : record(() -> multiResampleOp.filterAll(image))) {
+			String name = event.getEventType().getName();
+			if (name.equals(RESIZE)){
+				resizes++;
+				assertEquals("MultiResampleOp", event.getString("operation"));
+				assertEquals(120, event.getInt("destinationWidth"));
+			} else if (name.equals(RESIZE_PHASE)){
+				assertEquals("MultiResampleOp", event.getString("operation"));
+				phases.add(event.getString("phase"));
+			}
+		}
+		assertEquals(1, resizes);
+		assertEquals(new HashSet<>(Arrays.asList("Conversion", "Horizontal", "Vertical")), phases);
+	}
+
+	@Test
+	public void testTiledResampleOpEvents() throws IOException {
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(readImage(), "png", png);
+		TiledResampleOp tiledResampleOp = new TiledResampleOp(60, 45);
+		int resizes = 0;
+		for (RecordedEvent event : record(() -> {
+			try {
+				tiledResampleOp.filter(ImageIO.createImageInputStream(new ByteArrayInputStream(png.toByteArray())));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		})) {
+			if (event.getEventType().getName().equals(RESIZE)){
+				resizes++;
+				assertEquals("TiledResampleOp", event.getString("operation"));
+				assertEquals(60, event.getInt("destinationWidth"));
+				assertEquals("TYPE_3BYTE_BGR", event.getString("imageType"));
+			}
+		}
+		assertEquals(1, resizes);
+	}
+
+	@Test
+	public void testNotRecorded() throws IOException {
+		ResampleOp resampleOp = new ResampleOp(60, 45);
+		assertNull(ResizeEvents.beginResize(resampleOp, 600, 450, "TYPE_3BYTE_BGR", 60, 45));
+		assertNull(ResizeEvents.beginPhase());
+		assertNotNull(resampleOp.filter(readImage(), null));
+	}
+}